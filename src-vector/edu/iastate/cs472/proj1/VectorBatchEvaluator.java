@@ -0,0 +1,90 @@
+package edu.iastate.cs472.proj1;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author cswoods
+ *
+ * A BatchEvaluator that scores one position per vector lane with the jdk.incubator.vector
+ * API.  This file needs --add-modules jdk.incubator.vector to compile and to run, so it is
+ * in a source root of its own, src-vector, which is compiled after src and only on a JDK
+ * that has the module (see BatchEvaluator for how).  Without it, BatchEvaluator.create
+ * falls back to ScalarBatchEvaluator.
+ *
+ * The scalar evaluation loops over the pieces of one board, which is a different number of
+ * iterations and a different table lookup every time.  Here the loop is over the squares
+ * instead, the same for every position, and each step tests the square's bit in every
+ * lane's masks at once and adds the table value for it in the lanes where it is set.  The
+ * scores are ints, so the sums come out exactly the same as AlphaBetaSearch.evaluate's
+ * whatever order they are added in.
+ */
+final class VectorBatchEvaluator extends BatchEvaluator {
+
+    // the scores are added up in long lanes, next to the masks, and only made ints at the end. an int
+    // is half as wide as a long, so ints in a vector half the size have one lane per long
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    VectorBatchEvaluator(BoardGeometry geometry, int[] redManValues, int[] blackManValues, int[] kingValues) {
+        super(geometry, redManValues, blackManValues, kingValues);
+        if (LONGS.length() != INTS.length())
+            throw new IllegalStateException("long and int vectors have different lane counts");
+    }
+
+    @Override
+    public void evaluate(PositionBatch batch, int[] scores) {
+        checkArguments(batch, scores);
+        int lanes = LONGS.length();
+        int end = LONGS.loopBound(batch.count);
+        int i = 0;
+        for (; i < end; i += lanes) {
+            LongVector red = LongVector.fromArray(LONGS, batch.red, i);
+            LongVector black = LongVector.fromArray(LONGS, batch.black, i);
+            LongVector kings = LongVector.fromArray(LONGS, batch.kings, i);
+            LongVector redMen = red.and(kings.not());
+            LongVector redKings = red.and(kings);
+            LongVector blackMen = black.and(kings.not());
+            LongVector blackKings = black.and(kings);
+
+            // red adds, black subtracts, all into one sum
+            LongVector score = LongVector.zero(LONGS);
+            for (int bit : squareBits) {
+                long square = 1L << bit;
+                score = score.add(redManValues[bit], has(redMen, square));
+                score = score.add(kingValues[bit], has(redKings, square));
+                score = score.sub(blackManValues[bit], has(blackMen, square));
+                score = score.sub(kingValues[bit], has(blackKings, square));
+            }
+
+            // a side with no pieces left has lost, whatever the tables say. red is checked
+            // last, so like in evaluate, an empty board counts as a win for black
+            score = score.blend(Score.WIN, black.compare(VectorOperators.EQ, 0));
+            score = score.blend(-Score.WIN, red.compare(VectorOperators.EQ, 0));
+            ((IntVector) score.convertShape(VectorOperators.L2I, INTS, 0)).intoArray(scores, i);
+        }
+
+        // the last few positions that don't fill a whole vector
+        for (; i < batch.count; i++) {
+            scores[i] = AlphaBetaSearch.evaluate(batch.red[i], batch.black[i], batch.kings[i],
+                    redManValues, blackManValues, kingValues);
+        }
+    }
+
+    /**
+     * @return which lanes have a piece on the given square
+     */
+    private static VectorMask<Long> has(LongVector pieces, long square) {
+        return pieces.and(square).compare(VectorOperators.NE, 0);
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+}
@@ -1,21 +1,69 @@
 package edu.iastate.cs472.proj1;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Alpha-Beta Pruning Search to calculate the best move for black with a given checkers board.
  *
  * @author cswoods
  */
-public class AlphaBetaSearch {
-    private static int BOARD_SIZE = 8;
-    private static int MAX_DEPTH = 8;
+public class AlphaBetaSearch implements CheckersEngine {
+    private final SearchConfig config;
+    private final SearchContextPool pool;
 
-    private CheckersData board;
+    // what each kind of piece is worth on each square, indexed by bit. see evaluate
+    private final int[] redManValues;
+    private final int[] blackManValues;
+    private final int[] kingValues;
+    private final NnueNetwork network; // evaluates instead of the tables if there is one
 
     // An instance of this class will be created in the Checkers.Board
     // It would be better to keep the default constructor.
 
-    public void setCheckersData(CheckersData board) {
-        this.board = board;
+    /**
+     * Create a search with the default config.
+     */
+    public AlphaBetaSearch() {
+        this(SearchConfig.DEFAULT);
+    }
+
+    /**
+     * Create a search with the given config and its own small pool of contexts.
+     */
+    public AlphaBetaSearch(SearchConfig config) {
+        this(new SearchContextPool(config, 1));
+    }
+
+    /**
+     * Create a search that checks its contexts out of the given pool, which may be
+     * shared with other searches using the same config.
+     */
+    public AlphaBetaSearch(SearchContextPool pool) {
+        this.config = pool.config();
+        this.pool = pool;
+
+        BoardGeometry geometry = BoardGeometry.of(config.boardSize());
+        redManValues = pieceValues(geometry, CheckersData.RED);
+        blackManValues = pieceValues(geometry, CheckersData.BLACK);
+        kingValues = pieceValues(geometry, CheckersData.RED_KING);
+        network = pool.network();
+    }
+
+    @Override
+    public SearchConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get something that scores whole batches of positions with this search's handcrafted
+     * evaluation (not its network, if it has one), using SIMD instructions if the JVM has the
+     * Vector API.  See BatchEvaluator.
+     */
+    public BatchEvaluator batchEvaluator() {
+        return BatchEvaluator.create(BoardGeometry.of(config.boardSize()), redManValues, blackManValues, kingValues);
     }
 
     /**
@@ -23,111 +71,412 @@ public class AlphaBetaSearch {
      *
      * Has logic similar to minValue since it is BLACK's turn, so we are a min node.
      *
+     * This doesn't change any state of this object, so it is safe to call from several
+     * threads at once, as long as each call has its own board.
+     *
+     * @param board      The current board, which is not modified.
      * @param legalMoves All the legal moves for the agent at current step.
      */
-    public CheckersMove makeMove(CheckersMove[] legalMoves) {
-        // The checker board state can be obtained from this.board,
-        // which is a int 2D array. The numbers in the `board` are
-        // defined as
+    public CheckersMove makeMove(CheckersData board, CheckersMove[] legalMoves) {
+        return makeMove(board, null, legalMoves, null);
+    }
+
+    /**
+     * Chooses the best move for black out of the given legal moves, scoring any line
+     * that repeats a position from the game (or from earlier in the line) as a draw.
+     *
+     * @param board      The current board, which is not modified.
+     * @param history    The positions of the game so far, or null if not known. This is not modified.
+     * @param legalMoves All the legal moves for the agent at current step.
+     * @param stats      If not null, the counts for this search are added to it.
+     */
+    public CheckersMove makeMove(CheckersData board, GameHistory history, CheckersMove[] legalMoves,
+                                 SearchStats stats) {
+        return makeMove(board, history, legalMoves, stats, null);
+    }
+
+    /**
+     * Chooses the best move for black out of the given legal moves within a time limit.
+     * The search deepens until the limits say to stop (or it gets to the config's max
+     * depth) and plays the best move of the deepest iteration it got through.  If there is
+     * only one legal move, it is played right away.
+     *
+     * @param board      The current board, which is not modified.
+     * @param history    The positions of the game so far, or null if not known. This is not modified.
+     * @param legalMoves All the legal moves for the agent at current step.
+     * @param stats      If not null, the counts for this search are added to it.
+     * @param limits     How long the search may take, see TimeManager, or null to always search to max depth.
+     */
+    public CheckersMove makeMove(CheckersData board, GameHistory history, CheckersMove[] legalMoves,
+                                 SearchStats stats, SearchLimits limits) {
+        // The numbers in the `board` are defined as
         // 0 - empty square,
         // 1 - red man
         // 2 - red king
         // 3 - black man
         // 4 - black king
-        System.out.println(board);
-        System.out.println();
-
-        double minValue = Double.POSITIVE_INFINITY;
-        CheckersMove chosenMove = null;
-        for (CheckersMove move : legalMoves) {
-            CheckersData clone = new CheckersData(board);
-            clone.makeMove(move);
-            double value = maxValue(clone, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, null);
-            if (value <= minValue) {
-                minValue = value;
-                chosenMove = move;
+        return chooseMove(board, CheckersData.BLACK, history, legalMoves, stats, limits);
+    }
+
+    @Override
+    public CheckersMove chooseMove(CheckersData board, int player, GameHistory history, CheckersMove[] legalMoves,
+                                   SearchStats stats, SearchLimits limits) {
+        return search(board, player, history, legalMoves, 1, stats, limits)[0].move;
+    }
+
+    /**
+     * Multi-PV analysis: score the best few moves for the given player exactly, each with
+     * its principal variation.  Asking for as many lines as there are legal moves scores
+     * every one of them.
+     *
+     * This is a single iterative deepening search with one transposition table, and each
+     * iteration searches each root move once (see searchRoot), so scoring several lines costs
+     * much less than a separate search for each would.
+     *
+     * @param board   The current board, which is not modified.
+     * @param player  The player to move, RED or BLACK.
+     * @param history The positions of the game so far, or null if not known. This is not modified.
+     * @param lines   How many moves to score.
+     * @param stats   If not null, the counts for this search are added to it.
+     * @return the scored moves, best first for the player, or an empty list if there are no legal moves
+     */
+    public List<AnalysisLine> analyze(CheckersData board, int player, GameHistory history, int lines,
+                                      SearchStats stats) {
+        CheckersMove[] legalMoves = board.getLegalMoves(player);
+        if (legalMoves == null)
+            return Collections.emptyList();
+
+        RootMove[] rootMoves = search(board, player, history, legalMoves, lines, stats, null);
+        List<AnalysisLine> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(lines, rootMoves.length); i++) {
+            RootMove rootMove = rootMoves[i];
+            result.add(new AnalysisLine(rootMove.move, rootMove.score, rootMove.depth, Arrays.asList(rootMove.pv)));
+        }
+        return result;
+    }
+
+    /**
+     * A move at the root, with what the search has found out about it so far.
+     */
+    private static final class RootMove {
+        final CheckersMove move;
+        int score;
+        int depth;
+        CheckersMove[] pv;
+
+        RootMove(CheckersMove move) {
+            this.move = move;
+            this.pv = new CheckersMove[]{move};
+        }
+    }
+
+    /**
+     * Iterative deepening search at the root.  Each iteration goes one ply deeper than the
+     * last, and the transposition table and the root move order from the last iteration
+     * make the next one much cheaper than searching at that depth from scratch.
+     *
+     * With limits, the search also stops deepening when the soft limit says so, and when
+     * it hits the hard limit in the middle of an iteration, that iteration is abandoned.
+     * The first iteration is always finished, so there is always a move to play.
+     *
+     * @param lines  how many of the root moves need an exact score
+     * @param limits how long the search may take, or null for no limit
+     * @return the root moves, with the best lines first
+     */
+    private RootMove[] search(CheckersData board, int player, GameHistory history, CheckersMove[] legalMoves,
+                              int lines, SearchStats stats, SearchLimits limits) {
+        long started = System.nanoTime();
+        if (board.size() != config.boardSize())
+            throw new IllegalArgumentException("this search is for " + config.boardSize() + "x" + config.boardSize()
+                    + " boards, not " + board.size() + "x" + board.size());
+
+        RootMove[] rootMoves = new RootMove[legalMoves.length];
+        for (int i = 0; i < legalMoves.length; i++) {
+            rootMoves[i] = new RootMove(legalMoves[i]);
+        }
+        lines = Math.min(lines, rootMoves.length);
+
+        SearchContext context = pool.acquire();
+        try {
+            context.searches++;
+            context.transpositionTable.newSearch();
+            if (network != null)
+                network.update(context.accumulator(0), context.accumulator(0), board);
+            if (history != null)
+                context.path.copyFrom(history);
+
+            if (limits != null)
+                context.startClock(started, limits);
+
+            int stableIterations = 0; // how many iterations in a row have kept the same best move
+            for (int depthLimit = 1; depthLimit <= config.maxDepth(); depthLimit++) {
+                context.depthLimit = depthLimit;
+                CheckersMove previousBest = rootMoves[0].move;
+                context.rootBestNodes = context.stats.nodes;
+                context.rootBestAt = System.nanoTime();
+                searchRoot(context, board, player, rootMoves, lines);
+                // an unfinished iteration can still have put a new best move first, see searchRoot.
+                // either way the move was found when searchRoot put it first, not when the iteration ended
+                if (depthLimit == 1 || rootMoves[0].move != previousBest) {
+                    context.stats.bestMoveNodes = context.rootBestNodes;
+                    context.stats.bestMoveNanos = context.rootBestAt - started;
+                }
+                if (context.aborted)
+                    break;
+                context.stats.depth = depthLimit;
+
+                // a win (or a loss) that this iteration saw all the way to the end is exact, and looking
+                // deeper won't find a quicker one
+                int best = rootMoves[0].score;
+                if (lines == 1 && Score.isWin(best) && Score.plies(best) <= depthLimit)
+                    break;
+
+                if (limits != null) {
+                    if (rootMoves.length == 1 && lines == 1)
+                        break; // no need to think about a forced move
+                    stableIterations = rootMoves[0].move == previousBest ? stableIterations + 1 : 0;
+                    if (!limits.startNextIteration(System.nanoTime() - started, context.stats.nodes, stableIterations))
+                        break;
+                }
             }
+
+            if (SearchTracer.ENABLED && context.tracer != null)
+                context.tracer.sync();
+            if (stats != null)
+                stats.add(context.stats);
+            return rootMoves;
+        } finally {
+            pool.release(context);
         }
+    }
 
-        return chosenMove;
+    /**
+     * Search every root move once at the current depth limit, and rank the best lines of
+     * them first with their exact scores and principal variations.
+     *
+     * Until there are enough ranked moves, a move is searched with the full window.  After
+     * that, a move only has to show whether it beats the worst of the ranked moves, so it is
+     * searched with a window that starts there: if it fails low it is not one of the best,
+     * and if not, its score is exact and it takes its place in the ranking.  With one line
+     * this is plain alpha-beta at the root, and asking for every line costs about the same as
+     * a full-window search of each move, with all of them sharing one transposition table.
+     */
+    private void searchRoot(SearchContext context, CheckersData board, int player, RootMove[] rootMoves, int lines) {
+        boolean maximizing = player == CheckersData.RED;
+        int ranked = 0; // rootMoves[0 .. ranked - 1] have exact scores for this iteration, best first
+        for (int i = 0; i < rootMoves.length; i++) {
+            int alpha = -Score.INFINITY;
+            int beta = Score.INFINITY;
+            if (ranked == lines) {
+                if (maximizing)
+                    alpha = rootMoves[lines - 1].score;
+                else
+                    beta = rootMoves[lines - 1].score;
+            }
+
+            RootMove rootMove = rootMoves[i];
+            int value = rootMoveValue(context, board, player, rootMove.move, alpha, beta);
+            // out of time. the moves ranked so far were all searched at the new depth, and the rest
+            // keep where the last iteration put them, so the first move is still the best we know
+            if (context.aborted)
+                return;
+            if (ranked == lines && (maximizing ? value <= alpha : value >= beta))
+                continue; // not one of the best, and we only know a bound on its score
+
+            context.updatePv(0, rootMove.move);
+            rootMove.pv = context.pv(0);
+            rootMove.score = value;
+            rootMove.depth = context.depthLimit;
+
+            // insert it into the ranked moves, shifting down the ones it beats. everything it
+            // passes over has already been searched, so the unsearched moves stay where they are
+            int position = Math.min(ranked, lines - 1);
+            while (position > 0 && (maximizing ? value > rootMoves[position - 1].score
+                                               : value < rootMoves[position - 1].score)) {
+                position--;
+            }
+            System.arraycopy(rootMoves, position, rootMoves, position + 1, i - position);
+            rootMoves[position] = rootMove;
+            ranked = Math.min(ranked + 1, lines);
+            if (position == 0) {
+                // a move that is passed later in this iteration is never searched again in it, so
+                // the last time this happens is when the iteration found its best move
+                context.rootBestNodes = context.stats.nodes;
+                context.rootBestAt = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Find the value of making the given move at the root.
+     */
+    private int rootMoveValue(SearchContext context, CheckersData board, int player, CheckersMove move,
+                              int alpha, int beta) {
+        CheckersData clone = context.boardAt(0);
+        clone.copyFrom(board);
+        boolean isKingJump = clone.makeMove(move);
+        if (network != null)
+            network.update(context.accumulator(0), context.accumulator(1), clone);
+        if (SearchTracer.ENABLED)
+            context.movesIn[0] = move;
+
+        // if the move was a jump with more jumps after it, the same player keeps going
+        if (!isKingJump && move.isJump()
+                && clone.getLegalJumpsFrom(player, move.toRow, move.toCol) != null) {
+            if (player == CheckersData.RED)
+                return maxValue(context, clone, alpha, beta, 0, move);
+            else
+                return minValue(context, clone, alpha, beta, 0, move);
+        }
+
+        int value;
+        if (player == CheckersData.RED) {
+            context.path.push(clone.hash(CheckersData.BLACK), board.isProgressMove(move));
+            value = minValue(context, clone, alpha, beta, 0, null);
+        } else {
+            context.path.push(clone.hash(CheckersData.RED), board.isProgressMove(move));
+            value = maxValue(context, clone, alpha, beta, 0, null);
+        }
+        context.path.pop();
+        return value;
     }
 
     /**
      * Find the value to proceed with at a max node, meaning it is RED's turn.
      *
-     * Uses alpha-beta pruning.
+     * Uses alpha-beta pruning, with a transposition table to skip positions we've already
+     * searched deep enough and to try the best move from last time first.
      *
      * If fromJump is non-null, it means we're continuing a jumping streak, and the expanded moves
      * must be jumps off of the previous jump.
      *
+     * @param context The state of the running search
      * @param board
      * @param alpha
      * @param beta
      * @param depth
      * @param fromJump The move we just came from if we're continuing a multi-move jumping spree, null otherwise
-     * @return the min value at the node
+     * @return the max value at the node
      */
-    private double maxValue(CheckersData board, double alpha, double beta, int depth, CheckersMove fromJump) {
+    private int maxValue(SearchContext context, CheckersData board, int alpha, int beta, int depth, CheckersMove fromJump) {
+        context.clearPv(depth + 1);
+        int originalAlpha = alpha;
+        int traceFlags = SearchTracer.MAX_NODE | (fromJump != null ? SearchTracer.JUMP_CONTINUATION : 0);
+
+        // a position we've already been through is a draw, and so is going too long without progress.
+        // there's no point searching a cycle, since whoever is winning would just avoid it anyway.
+        if (fromJump == null && isDraw(context.path))
+            return traced(context, 0, depth, originalAlpha, beta, traceFlags | SearchTracer.DRAW, null, -1, 0);
+
         // if we're at max depth, just evaluate our board instead of expanding
-        if (depth == MAX_DEPTH)
-            return evaluate(board);
+        if (depth >= context.depthLimit)
+            return traced(context, staticValue(context, board, depth), depth, originalAlpha, beta,
+                    traceFlags | SearchTracer.LEAF, null, -1, 0);
 
-        double value = Double.NEGATIVE_INFINITY;
-        CheckersMove[] moves = board.getLegalMoves(CheckersData.RED);
+        // the best RED can do from here is BLACK running out of moves next ply, and the worst is
+        // running out now. if a win we already have is quicker than that, there's no need to look,
+        // and otherwise the window can still be narrowed down to it
+        int ply = depth + 1;
+        int bestCase = Score.win(CheckersData.RED, ply + 1);
+        int worstCase = Score.win(CheckersData.BLACK, ply);
+        if (bestCase <= alpha)
+            return traced(context, bestCase, depth, originalAlpha, beta, traceFlags | SearchTracer.WIN_DISTANCE, null, -1, 0);
+        if (worstCase >= beta)
+            return traced(context, worstCase, depth, originalAlpha, beta, traceFlags | SearchTracer.WIN_DISTANCE, null, -1, 0);
+        alpha = Math.max(alpha, worstCase);
+        beta = Math.min(beta, bestCase);
 
-        // if no moves are available, RED has lost all their pieces and is about to lose.
-        if (moves == null) return value;
+        context.stats.nodes++;
+        if (context.outOfTime())
+            return 0; // nobody will look at this, the whole iteration is being thrown away
 
-        // expand every legal move
-        for (CheckersMove move : moves) {
-            // check if we're continuing a jumping spree
-            if (fromJump != null) {
-                // if this move isn't another jump from our past jump's piece, skip it
-                if (move.fromRow != fromJump.toRow || move.fromCol != fromJump.toCol)
-                    continue;
+        // positions in the middle of a jumping spree aren't in the transposition table, since
+        // the board alone doesn't say that the same piece has to keep jumping
+        long hash = 0;
+        boolean mirrored = false;
+        int hashMove = 0;
+        if (fromJump == null) {
+            hash = config.canonicalKeys() ? board.canonicalHash(CheckersData.RED) : board.hash(CheckersData.RED);
+            mirrored = config.canonicalKeys() && board.isMirrored(CheckersData.RED);
+            TranspositionTable.Entry entry = context.ttEntry;
+            if (probe(context, hash, mirrored, ply)) {
+                if (entry.depth >= context.depthLimit - depth && entry.cuts(alpha, beta))
+                    return traced(context, entry.score, depth, originalAlpha, beta,
+                            traceFlags | SearchTracer.TT_CUTOFF, null, -1, 0);
+                hashMove = entry.move;
             }
+        }
 
-            // make a clone with the move made
-            CheckersData clone = new CheckersData(board);
-            boolean isKingJump = clone.makeMove(move);
+        int value = -Score.INFINITY;
+        CheckersMove[] moves = fromJump == null
+                ? board.getLegalMoves(CheckersData.RED)
+                // if we're continuing a jumping spree, only more jumps by the same piece are allowed
+                : board.getLegalJumpsFrom(CheckersData.RED, fromJump.toRow, fromJump.toCol);
 
-            // it's possible we have another legal move after jumping
-            if (!isKingJump && move.isJump()) {
-                CheckersMove[] legalJumps = clone.getLegalJumpsFrom(CheckersData.RED, move.toRow, move.toCol);
-                if (legalJumps != null) {
-                    // we have more jumps from our jump, those are required moves so we test them instead
-                    value = Math.max(value, maxValue(
-                            clone, alpha, beta, depth + 1, move));
+        // if no moves are available, RED has lost, right here
+        if (moves == null)
+            return traced(context, Score.win(CheckersData.BLACK, ply), depth, originalAlpha, beta, traceFlags | SearchTracer.NO_MOVES, null, -1, 0);
 
-                    if (value >= beta)
-                        return value;
-                    alpha = Math.max(alpha, value);
+        orderMoves(moves, hashMove);
+        CheckersMove bestMove = null;
+        int cutoffIndex = -1;
 
-                    continue;
-                }
-                // if we don't have more jumps from our jump, we expand other moves instead.
+        // expand every legal move
+        for (int i = 0; i < moves.length; i++) {
+            CheckersMove move = moves[i];
+            // make a clone with the move made, reusing the scratch board for the next ply
+            CheckersData clone = context.boardAt(depth + 1);
+            clone.copyFrom(board);
+            boolean isKingJump = clone.makeMove(move);
+            if (network != null) // going back up is free, the parent's accumulator is still there
+                network.update(context.accumulator(depth + 1), context.accumulator(depth + 2), clone);
+            if (SearchTracer.ENABLED)
+                context.movesIn[depth + 1] = move;
+
+            int moveValue;
+            if (!isKingJump && move.isJump()
+                    && clone.getLegalJumpsFrom(CheckersData.RED, move.toRow, move.toCol) != null) {
+                // we have more jumps from our jump, those are required moves so we test them instead
+                moveValue = maxValue(context, clone, alpha, beta, depth + 1, move);
+            } else {
+                // time to go deeper
+                context.path.push(clone.hash(CheckersData.BLACK), board.isProgressMove(move));
+                moveValue = minValue(context, clone, alpha, beta, depth + 1, null);
+                context.path.pop();
             }
+            if (context.aborted)
+                return 0;
 
-            // time to go deeper
-            value = Math.max(value, minValue(
-                    clone, alpha, beta, depth + 1, null));
+            if (bestMove == null || moveValue > value) {
+                value = moveValue;
+                bestMove = move;
+                if (value > alpha)
+                    context.updatePv(depth + 1, move);
+            }
 
             // say goodbye to dates and hello to pruning
-            if (value >= beta)
-                return value;
+            if (value >= beta) {
+                cutoffIndex = i;
+                break;
+            }
             alpha = Math.max(alpha, value);
         }
-        return value;
+
+        if (fromJump == null)
+            store(context, hash, mirrored, value, depth, ply, originalAlpha, beta, bestMove);
+        return traced(context, value, depth, originalAlpha, beta, traceFlags, bestMove, cutoffIndex, moves.length);
     }
 
     /**
      * Find the value to proceed with at a min node, meaning it is BLACK's turn.
      *
-     * Uses alpha-beta pruning.
+     * Uses alpha-beta pruning, with a transposition table to skip positions we've already
+     * searched deep enough and to try the best move from last time first.
      *
      * If fromJump is non-null, it means we're continuing a jumping streak, and the expanded moves
      * must be jumps off of the previous jump.
      *
+     * @param context The state of the running search
      * @param board
      * @param alpha
      * @param beta
@@ -135,55 +484,241 @@ public class AlphaBetaSearch {
      * @param fromJump The move we just came from if we're continuing a multi-move jumping spree, null otherwise
      * @return the min value at the node
      */
-    private double minValue(CheckersData board, double alpha, double beta, int depth, CheckersMove fromJump) {
+    private int minValue(SearchContext context, CheckersData board, int alpha, int beta, int depth, CheckersMove fromJump) {
+        context.clearPv(depth + 1);
+        int originalBeta = beta;
+        int traceFlags = fromJump != null ? SearchTracer.JUMP_CONTINUATION : 0;
+
+        // a position we've already been through is a draw, and so is going too long without progress.
+        // there's no point searching a cycle, since whoever is winning would just avoid it anyway.
+        if (fromJump == null && isDraw(context.path))
+            return traced(context, 0, depth, alpha, originalBeta, traceFlags | SearchTracer.DRAW, null, -1, 0);
+
         // if we're at max depth, just evaluate our board instead of expanding
-        if (depth == MAX_DEPTH)
-            return evaluate(board);
+        if (depth >= context.depthLimit)
+            return traced(context, staticValue(context, board, depth), depth, alpha, originalBeta,
+                    traceFlags | SearchTracer.LEAF, null, -1, 0);
 
-        double value = Double.POSITIVE_INFINITY;
-        CheckersMove[] moves = board.getLegalMoves(CheckersData.BLACK);
+        // the same as for RED in maxValue, the other way around
+        int ply = depth + 1;
+        int bestCase = Score.win(CheckersData.BLACK, ply + 1);
+        int worstCase = Score.win(CheckersData.RED, ply);
+        if (bestCase >= beta)
+            return traced(context, bestCase, depth, alpha, originalBeta, traceFlags | SearchTracer.WIN_DISTANCE, null, -1, 0);
+        if (worstCase <= alpha)
+            return traced(context, worstCase, depth, alpha, originalBeta, traceFlags | SearchTracer.WIN_DISTANCE, null, -1, 0);
+        alpha = Math.max(alpha, bestCase);
+        beta = Math.min(beta, worstCase);
 
-        // if no moves are available, RED has lost all their pieces and is about to lose.
-        if (moves == null) return value;
+        context.stats.nodes++;
+        if (context.outOfTime())
+            return 0; // nobody will look at this, the whole iteration is being thrown away
 
-        // expand every legal move
-        for (CheckersMove move : moves) {
-            // check if we're continuing a jumping spree
-            if (fromJump != null) {
-                // if this move isn't another jump from our past jump's piece, skip it
-                if (move.fromRow != fromJump.toRow || move.fromCol != fromJump.toCol)
-                    continue;
+        // positions in the middle of a jumping spree aren't in the transposition table, since
+        // the board alone doesn't say that the same piece has to keep jumping
+        long hash = 0;
+        boolean mirrored = false;
+        int hashMove = 0;
+        if (fromJump == null) {
+            hash = config.canonicalKeys() ? board.canonicalHash(CheckersData.BLACK) : board.hash(CheckersData.BLACK);
+            mirrored = config.canonicalKeys() && board.isMirrored(CheckersData.BLACK);
+            TranspositionTable.Entry entry = context.ttEntry;
+            if (probe(context, hash, mirrored, ply)) {
+                if (entry.depth >= context.depthLimit - depth && entry.cuts(alpha, beta))
+                    return traced(context, entry.score, depth, alpha, originalBeta,
+                            traceFlags | SearchTracer.TT_CUTOFF, null, -1, 0);
+                hashMove = entry.move;
             }
+        }
 
-            // make a clone with the move made
-            CheckersData clone = new CheckersData(board);
-            boolean isKingJump = clone.makeMove(move);
+        int value = Score.INFINITY;
+        CheckersMove[] moves = fromJump == null
+                ? board.getLegalMoves(CheckersData.BLACK)
+                // if we're continuing a jumping spree, only more jumps by the same piece are allowed
+                : board.getLegalJumpsFrom(CheckersData.BLACK, fromJump.toRow, fromJump.toCol);
 
-            // it's possible we have another legal move after jumping
-            if (!isKingJump && move.isJump()) {
-                CheckersMove[] legalJumps = clone.getLegalJumpsFrom(CheckersData.BLACK, move.toRow, move.toCol);
-                if (legalJumps != null) {
-                    // we have more jumps from our jump, those are required moves so we test them instead
-                    value = Math.min(value, minValue(
-                            clone, alpha, beta, depth + 1, move));
+        // if no moves are available, BLACK has lost, right here
+        if (moves == null)
+            return traced(context, Score.win(CheckersData.RED, ply), depth, alpha, originalBeta, traceFlags | SearchTracer.NO_MOVES, null, -1, 0);
 
-                    if (value <= alpha)
-                        return value;
-                    beta = Math.min(beta, value);
+        orderMoves(moves, hashMove);
+        CheckersMove bestMove = null;
+        int cutoffIndex = -1;
 
-                    continue;
-                }
+        // expand every legal move
+        for (int i = 0; i < moves.length; i++) {
+            CheckersMove move = moves[i];
+            // make a clone with the move made, reusing the scratch board for the next ply
+            CheckersData clone = context.boardAt(depth + 1);
+            clone.copyFrom(board);
+            boolean isKingJump = clone.makeMove(move);
+            if (network != null) // going back up is free, the parent's accumulator is still there
+                network.update(context.accumulator(depth + 1), context.accumulator(depth + 2), clone);
+            if (SearchTracer.ENABLED)
+                context.movesIn[depth + 1] = move;
+
+            int moveValue;
+            if (!isKingJump && move.isJump()
+                    && clone.getLegalJumpsFrom(CheckersData.BLACK, move.toRow, move.toCol) != null) {
+                // we have more jumps from our jump, those are required moves so we test them instead
+                moveValue = minValue(context, clone, alpha, beta, depth + 1, move);
+            } else {
+                // time to go deeper
+                context.path.push(clone.hash(CheckersData.RED), board.isProgressMove(move));
+                moveValue = maxValue(context, clone, alpha, beta, depth + 1, null);
+                context.path.pop();
             }
+            if (context.aborted)
+                return 0;
 
-            // time to go deeper
-            value = Math.min(value, maxValue(
-                    clone, alpha, beta, depth + 1, null));
+            if (bestMove == null || moveValue < value) {
+                value = moveValue;
+                bestMove = move;
+                if (value < beta)
+                    context.updatePv(depth + 1, move);
+            }
 
             // say goodbye to dates and hello to pruning
-            if (value <= alpha)
-                return value;
+            if (value <= alpha) {
+                cutoffIndex = i;
+                break;
+            }
             beta = Math.min(beta, value);
         }
+
+        if (fromJump == null)
+            store(context, hash, mirrored, value, depth, ply, alpha, originalBeta, bestMove);
+        return traced(context, value, depth, alpha, originalBeta, traceFlags, bestMove, cutoffIndex, moves.length);
+    }
+
+    /**
+     * Record a finished node in the trace and pass its value through.  SearchTracer.ENABLED
+     * is a constant, so unless tracing was turned on when the JVM started, the JIT reduces
+     * this to just returning value.
+     */
+    private static int traced(SearchContext context, int value, int depth, int alpha, int beta,
+                                 int flags, CheckersMove bestMove, int cutoffIndex, int moveCount) {
+        if (SearchTracer.ENABLED && context.tracer != null) {
+            context.tracer.record(context.id, context.searches, depth, context.depthLimit, flags,
+                    context.movesIn[depth], bestMove, cutoffIndex, moveCount, alpha, beta, value);
+        }
+        return value;
+    }
+
+    /**
+     * Put the move the transposition table suggested first, if it's one of the moves.
+     */
+    private static void orderMoves(CheckersMove[] moves, int hashMove) {
+        if (hashMove == 0)
+            return;
+        for (int i = 1; i < moves.length; i++) {
+            if (TranspositionTable.encode(moves[i]) == hashMove) {
+                CheckersMove move = moves[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Look a position up in the transposition table, into context.ttEntry.  If the table is
+     * keyed on canonical hashes and this position is the mirror image of the canonical one,
+     * the entry is turned around to fit it.
+     *
+     * @param mirrored whether the position is the mirror image of the one hash is for
+     * @param ply      how many plies after the root the position is, for the distance of a win
+     * @return true if the position was found
+     */
+    private boolean probe(SearchContext context, long hash, boolean mirrored, int ply) {
+        TranspositionTable.Entry entry = context.ttEntry;
+        context.stats.ttProbes++;
+        if (!context.transpositionTable.probe(hash, entry))
+            return false;
+        context.stats.ttHits++;
+        if (entry.mirrored != mirrored) // the other side stored this one, so it's a hit we only got by sharing
+            context.stats.ttMirrorHits++;
+        if (mirrored)
+            entry.mirror(config.boardSize());
+        entry.score = Score.fromTable(entry.score, ply);
+        return true;
+    }
+
+    /**
+     * Store the result of searching a node in the transposition table.  alpha and beta
+     * are the window the node was searched with, which says whether value is exact or
+     * just a bound.  If the position is the mirror image of the one hash is for, it is
+     * all turned around first, since the table holds the canonical side's point of view.
+     */
+    private void store(SearchContext context, long hash, boolean mirrored, int value, int depth, int ply,
+                       int alpha, int beta, CheckersMove bestMove) {
+        int bound;
+        if (value <= alpha)
+            bound = TranspositionTable.UPPER;
+        else if (value >= beta)
+            bound = TranspositionTable.LOWER;
+        else
+            bound = TranspositionTable.EXACT;
+        int move = TranspositionTable.encode(bestMove);
+        value = Score.toTable(value, ply);
+        if (mirrored) {
+            value = -value;
+            if (bound != TranspositionTable.EXACT)
+                bound = bound == TranspositionTable.LOWER ? TranspositionTable.UPPER : TranspositionTable.LOWER;
+            move = TranspositionTable.mirror(move, config.boardSize());
+        }
+        context.transpositionTable.store(hash, value, context.depthLimit - depth, bound, move, mirrored);
+    }
+
+    /**
+     * Check if the position at the end of the given path is a draw, either because it
+     * already came up earlier in the path or because there hasn't been a capture or a
+     * man moved in too long.
+     *
+     * In a real game a position has to come up three times to be a draw, but inside the
+     * search the second time is enough: the first time, the same player had the same
+     * choices and the line just loops back.
+     */
+    private boolean isDraw(GameHistory path) {
+        return path.quietPlies() >= config.noProgressPlies() || path.repetitions() > 1;
+    }
+
+    /**
+     * The static evaluation of a board, from the eval cache if it's there, otherwise from
+     * evaluate (and then put in the cache).  Everything in the search that wants a static
+     * evaluation should go through here.
+     *
+     * With a network, the evaluation comes from the accumulator the search kept up to date
+     * for the node, instead of from the tables.
+     *
+     * The handcrafted evaluation of the mirror image of a board is exactly the negative, so
+     * with canonical keys the two share a cache entry.  A trained network doesn't have to
+     * agree with itself like that, so its evaluations are cached as they are.
+     *
+     * A side with no pieces left has lost, which is a win for the other side at this ply (see
+     * Score) rather than an evaluation, so it never goes in the cache.
+     */
+    private int staticValue(SearchContext context, CheckersData board, int depth) {
+        if (board.red == 0)
+            return Score.win(CheckersData.BLACK, depth + 1);
+        if (board.black == 0)
+            return Score.win(CheckersData.RED, depth + 1);
+
+        // the evaluation doesn't care whose turn it is
+        boolean canonical = config.canonicalKeys() && network == null;
+        long hash = canonical ? board.canonicalHash(CheckersData.EMPTY) : board.hash(CheckersData.RED);
+        int sign = canonical && board.isMirrored(CheckersData.EMPTY) ? -1 : 1; // the cache has the other side's score
+        context.stats.evaluations++;
+        int value = context.evalCache.probe(hash);
+        if (value != EvalCache.MISS) {
+            context.stats.evalCacheHits++;
+            return sign * value;
+        }
+        if (network == null)
+            value = evaluate(board);
+        else
+            value = network.evaluate(context.accumulator(depth + 1));
+        context.evalCache.store(hash, sign * value);
         return value;
     }
 
@@ -196,62 +731,87 @@ public class AlphaBetaSearch {
      *
      * Each kinged piece is worth 2.5 points, but the value is cut by 1/4 for every wall it is touching.
      *
-     * Red pieces get positive values, black pieces get negative values. If there are no black pieces left, red gets
-     * a score of 100, and vice-versa: if there are no reds left, black gets -100.
+     * Red pieces get positive values, black pieces get negative values. The score is in centi-pieces, see Score.
+     * If there are no black pieces left, red gets Score.WIN, and vice-versa: if there are no reds left, black gets
+     * -Score.WIN.  (The search never asks about those, since it knows how far away the win is.)
+     *
+     * The value of every kind of piece on every square is worked out once in the constructor (see pieceValue),
+     * so this just adds up a table entry per piece.
      *
      * @param board
      * @return
      */
-    private double evaluate(CheckersData board) {
-        double red = 0;
-        double black = 0;
-
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                if (i % 2 == j % 2) { // checkers are only on every other square
-                    int piece = board.pieceAt(i, j);
-                    if (piece == CheckersData.RED) {
-                        double value = 1;
-                        if (i == 1) {
-                            value = 1.45;
-                        } else if (i == 2) {
-                            value = 1.2;
-                        }
-                        if (j == 0 || j == BOARD_SIZE - 1) {
-                            value *= 0.75;
-                        }
-                        red += value;
-                    } else if (piece == CheckersData.BLACK) {
-                        double value = 1;
-                        if (i == BOARD_SIZE - 2) {
-                            value = 1.45;
-                        } else if (i == BOARD_SIZE - 3) {
-                            value = 1.2;
-                        }
-                        if (j == 0 || j == BOARD_SIZE - 1) {
-                            value *= 0.75;
-                        }
-                        black += value;
-                    } else if (piece == CheckersData.RED_KING || piece == CheckersData.BLACK_KING) {
-                        double value = 2.5;
-                        if (i == 0 || i == BOARD_SIZE - 1) {
-                            value *= 0.75;
-                        }
-                        if (j == 0 || j == BOARD_SIZE - 1) {
-                            value *= 0.75;
-                        }
-                        if (piece == CheckersData.RED_KING) {
-                            red += value;
-                        } else {
-                            black += value;
-                        }
-                    }
-                }
+    private int evaluate(CheckersData board) {
+        return evaluate(board.red, board.black, board.kings, redManValues, blackManValues, kingValues);
+    }
+
+    /**
+     * The evaluation itself, on the piece masks of a board and the tables of what each piece is
+     * worth where.  BatchEvaluator uses this too, so it always scores the same as the search.
+     */
+    static int evaluate(long redPieces, long blackPieces, long kings,
+                        int[] redManValues, int[] blackManValues, int[] kingValues) {
+        if (redPieces == 0) return -Score.WIN;
+        if (blackPieces == 0) return Score.WIN;
+
+        int red = sum(redPieces & ~kings, redManValues) + sum(redPieces & kings, kingValues);
+        int black = sum(blackPieces & ~kings, blackManValues) + sum(blackPieces & kings, kingValues);
+        return red - black;
+    }
+
+    /**
+     * Add up the table values of every bit in pieces.
+     */
+    private static int sum(long pieces, int[] values) {
+        int total = 0;
+        for (; pieces != 0; pieces &= pieces - 1) {
+            total += values[Long.numberOfTrailingZeros(pieces)];
+        }
+        return total;
+    }
+
+    /**
+     * Make a table of what the given piece is worth on each square of the board, indexed by bit,
+     * in centi-pieces.
+     */
+    static int[] pieceValues(BoardGeometry geometry, int piece) {
+        int[] values = new int[64];
+        for (int row = 0; row < geometry.size; row++) {
+            for (int col = row % 2; col < geometry.size; col += 2) {
+                values[geometry.bit(row, col)] = Score.ofPieces(pieceValue(piece, row, col, geometry.size));
             }
         }
+        return values;
+    }
 
-        if (red == 0) return -100;
-        if (black == 0) return 100;
-        return red - black;
+    /**
+     * What one piece is worth on the given square in pieces, following the rules described in evaluate.
+     */
+    private static double pieceValue(int piece, int i, int j, int size) {
+        double value;
+        if (piece == CheckersData.RED) {
+            value = 1;
+            if (i == 1) {
+                value = 1.45;
+            } else if (i == 2) {
+                value = 1.2;
+            }
+        } else if (piece == CheckersData.BLACK) {
+            value = 1;
+            if (i == size - 2) {
+                value = 1.45;
+            } else if (i == size - 3) {
+                value = 1.2;
+            }
+        } else { // a king of either color
+            value = 2.5;
+            if (i == 0 || i == size - 1) {
+                value *= 0.75;
+            }
+        }
+        if (j == 0 || j == size - 1) {
+            value *= 0.75;
+        }
+        return value;
     }
 }
@@ -0,0 +1,77 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author cswoods
+ *
+ * One root move as scored by AlphaBetaSearch.analyze: the move, its score, and the
+ * principal variation, which is the line the search expects both players to follow
+ * after it.
+ */
+public final class AnalysisLine {
+
+    private final CheckersMove move;
+    private final int score;
+    private final int depth;
+    private final List<CheckersMove> pv;
+
+    AnalysisLine(CheckersMove move, int score, int depth, List<CheckersMove> pv) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.pv = Collections.unmodifiableList(pv);
+    }
+
+    public CheckersMove move() {
+        return move;
+    }
+
+    /**
+     * @return the score of the move in centi-pieces, where positive is good for RED and
+     *         negative is good for BLACK, like AlphaBetaSearch.evaluate.  A forced win is
+     *         worth 30000 less the plies until it, see isWin() and winPlies()
+     */
+    public int score() {
+        return score;
+    }
+
+    /**
+     * @return true if the score is a forced win, for RED if it's positive and BLACK if not
+     */
+    public boolean isWin() {
+        return Score.isWin(score);
+    }
+
+    /**
+     * @return how many plies after the current position the forced win comes, if isWin()
+     */
+    public int winPlies() {
+        return Score.plies(score);
+    }
+
+    /**
+     * @return how many plies past the move were searched to get the score
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return the principal variation, starting with move()
+     */
+    public List<CheckersMove> pv() {
+        return pv;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Score.format(score)).append(" (depth ").append(depth).append(')');
+        for (CheckersMove m : pv) {
+            sb.append(' ').append(m);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Arrays;
+
+/**
+ * @author cswoods
+ *
+ * The shape of a checkerboard of a given size, and how its playable squares map onto
+ * the bits of a long, so CheckersData can keep each kind of piece as a bitboard.
+ *
+ * Only the squares with row % 2 == col % 2 are used.  They are numbered two rows at a
+ * time: the first row of a pair gets size/2 bits, then the second row gets size/2 bits,
+ * then one "ghost" bit that is never a square, and then the next pair starts.  Within a
+ * row, bits go from the rightmost square to the leftmost.  Laid out like this, moving
+ * one square diagonally is always the same shift no matter which row you're on:
+ *
+ *   down and to the right:  bit + size/2
+ *   down and to the left:   bit + size/2 + 1
+ *   up and to the left:     bit - size/2
+ *   up and to the right:    bit - size/2 - 1
+ *
+ * A step off the left or right side lands on a ghost bit, and a step off the top or
+ * bottom lands outside the board, so masking with the playable squares is the only edge
+ * check a move generator needs.  A board with n pairs of rows uses n * (size + 1) - 1
+ * bits, so sizes up to 10 by 10 (50 squares in 54 bits) fit in one long.
+ *
+ * Turning the board around (row r, column c to row size-1-r, column size-1-c) keeps the
+ * playable squares playable, and in this layout it just reverses the order of the bits
+ * in use, ghost bits included, so mirror() is one Long.reverse and a shift.
+ *
+ * There is one shared instance per size, from of().
+ */
+final class BoardGeometry {
+
+    static final int MIN_SIZE = 4;
+    static final int MAX_SIZE = 10;
+
+    private static final BoardGeometry[] INSTANCES = new BoardGeometry[MAX_SIZE + 1];
+    static {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size += 2) {
+            INSTANCES[size] = new BoardGeometry(size);
+        }
+    }
+
+    final int size;       // number of rows, and of columns
+    final int squares;    // number of playable squares
+    final int bits;       // number of bits in use, counting the ghost bits between rows
+    final int downRight;  // bit offset for one step down and to the right, the others follow from it
+    final int downLeft;
+
+    final long playable;  // every bit that is a real square
+    final long topRow;    // the squares of row 0, where red men are crowned
+    final long bottomRow; // the squares of the last row, where black men are crowned
+    final long[] rows;    // rows[r] has the squares of row r
+
+    private final int[] bitRow; // the row of each bit, or -1 for bits that aren't squares
+    private final int[] bitCol;
+
+    private BoardGeometry(int size) {
+        this.size = size;
+        this.squares = size * size / 2;
+        this.bits = size / 2 * (size + 1) - 1;
+        this.downRight = size / 2;
+        this.downLeft = size / 2 + 1;
+
+        bitRow = new int[64];
+        bitCol = new int[64];
+        Arrays.fill(bitRow, -1);
+        Arrays.fill(bitCol, -1);
+        rows = new long[size];
+        long all = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = row % 2; col < size; col += 2) {
+                int bit = bit(row, col);
+                bitRow[bit] = row;
+                bitCol[bit] = col;
+                rows[row] |= 1L << bit;
+            }
+            all |= rows[row];
+        }
+        playable = all;
+        topRow = rows[0];
+        bottomRow = rows[size - 1];
+    }
+
+    /**
+     * @param size the number of rows and columns, an even number from MIN_SIZE to MAX_SIZE
+     * @return the geometry for a board of that size
+     */
+    static BoardGeometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+            throw new IllegalArgumentException("board size must be even and between "
+                    + MIN_SIZE + " and " + MAX_SIZE + ", was " + size);
+        return INSTANCES[size];
+    }
+
+    /**
+     * @return the bit for the square in the given row and column, or -1 if it isn't
+     *         a playable square
+     */
+    int bit(int row, int col) {
+        if (row < 0 || row >= size || col < 0 || col >= size || row % 2 != col % 2)
+            return -1;
+        return (row / 2) * (size + 1) + (row % 2) * (size / 2) + (size - 1 - col) / 2;
+    }
+
+    /**
+     * @return the bit of the square you get by turning the board around
+     */
+    int mirrorBit(int bit) {
+        return bits - 1 - bit;
+    }
+
+    /**
+     * @return the squares of mask with the board turned around
+     */
+    long mirror(long mask) {
+        return Long.reverse(mask) >>> (64 - bits);
+    }
+
+    int rowOf(int bit) {
+        return bitRow[bit];
+    }
+
+    int colOf(int bit) {
+        return bitCol[bit];
+    }
+}
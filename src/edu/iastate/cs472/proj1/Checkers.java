@@ -3,7 +3,9 @@ package edu.iastate.cs472.proj1;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 
@@ -16,6 +18,34 @@ import java.util.ArrayList;
  * The class has a main() routine that lets it be run as a stand-alone
  * application.  The application just opens a window that uses an object
  * of type Checkers as its content pane.
+ *
+ * The board is 8-by-8 unless the system property checkers.boardSize says
+ * otherwise, e.g. -Dcheckers.boardSize=10 for a 10-by-10 board.
+ *
+ * Setting the system property checkers.showStats prints what the AI's search
+ * did (nodes, evaluations, cache hits, and its time limits if there is a
+ * clock) after each of its moves.
+ *
+ * Normally the AI searches to a fixed depth and there is no clock.  The system
+ * property checkers.timeControl sets up a clock for both players instead, as
+ * minutes for the game plus seconds added per move, e.g. -Dcheckers.timeControl=5+3,
+ * or just -Dcheckers.timeControl=5 for sudden death.  The AI then searches as
+ * deep as its share of the clock allows.
+ *
+ * The AI's tables share the 64 MB of MemoryBudget.DEFAULT, which the system
+ * property checkers.memory changes, e.g. -Dcheckers.memory=512m.
+ *
+ * The AI's transposition table is kept for the whole session.  Setting the
+ * system property checkers.ttFile keeps it in that file, so it is still there
+ * the next time the program is run.  Setting checkers.network to the file of an
+ * NnueNetwork makes the AI evaluate positions with that network.
+ *
+ * The AI is an AlphaBetaSearch unless the system property checkers.engine is
+ * mcts, which plays with a MonteCarloSearch instead, on as many threads as
+ * checkers.threads says.
+ *
+ * Everything in src compiles with a plain javac.  The source root src-vector has one
+ * more class, which needs --add-modules jdk.incubator.vector; see BatchEvaluator.
  */
 public class Checkers extends JPanel {
 
@@ -33,7 +63,7 @@ public class Checkers extends JPanel {
         window.setLocation( (screensize.width - window.getWidth())/2,
                 (screensize.height - window.getHeight())/2 );
         window.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
-        window.setResizable(false);
+        window.setResizable(true);  // the board scales with the window
         window.setVisible(true);
     }
 
@@ -43,6 +73,10 @@ public class Checkers extends JPanel {
 
     private JLabel message;  // Label for displaying messages to the user.
 
+    private JLabel clockLabel;  // Label showing both clocks, or null if there is no clock.
+
+    private Board board;  // The checkerboard, which is sized to fit the window.
+
     /**
      * The constructor creates the Board (which in turn creates and manages
      * the buttons and message label), adds all the components, and sets
@@ -58,30 +92,58 @@ public class Checkers extends JPanel {
 
         /* Create the components and add them to the applet. */
 
-        Board board = new Board();  // Note: The constructor for the
+        board = new Board();  // Note: The constructor for the
         //   board also creates the buttons
         //   and label.
         add(board);
         add(newGameButton);
         add(resignButton);
         add(message);
-
-      /* Set the position and size of each component by calling
-       its setBounds() method. */
-
-        board.setBounds(20,20,164,164); // Note:  size MUST be 164-by-164 !
-        newGameButton.setBounds(210, 60, 120, 30);
-        resignButton.setBounds(210, 120, 120, 30);
-        message.setBounds(0, 200, 350, 30);
+        if (clockLabel != null)
+            add(clockLabel);
+
+        setSize(getPreferredSize());
+        layoutComponents();
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent evt) {
+                layoutComponents();
+            }
+        });
 
     } // end constructor
 
     /**
-     * This panel displays a 160-by-160 checkerboard pattern with
-     * a 2-pixel black border.  It is assumed that the size of the
-     * panel is set to exactly 164-by-164 pixels.  This class does
-     * the work of letting the users play checkers, and it displays
-     * the checkerboard.
+     * Set the position and size of each component by calling its setBounds()
+     * method.  The board gets the biggest square that fits next to the buttons
+     * and above the message, rounded down to a whole number of pixels per
+     * square.  At the preferred size this is the original 164-by-164 layout.
+     */
+    private void layoutComponents() {
+        int rows = board.board.size();
+        int available = Math.min(getWidth() - 186, getHeight() - 86);
+        int squareSize = Math.max(4, (available - 4) / rows);
+        int boardSize = 4 + rows * squareSize;  // squares plus the 2-pixel border
+
+        board.setBounds(20, 20, boardSize, boardSize);
+        newGameButton.setBounds(46 + boardSize, 20 + boardSize * 40 / 164, 120, 30);
+        resignButton.setBounds(46 + boardSize, 20 + boardSize * 100 / 164, 120, 30);
+        message.setBounds(0, 36 + boardSize, getWidth(), 30);
+        if (clockLabel != null)
+            clockLabel.setBounds(46 + boardSize, 20 + boardSize * 140 / 164, 120, 40);
+    }
+
+    /**
+     * This panel displays a checkerboard pattern with a 2-pixel black
+     * border.  The squares are as big as the panel allows, so the panel
+     * should be square and 4 pixels more than a multiple of the number of
+     * rows.  This class does the work of letting the users play checkers,
+     * and it displays the checkerboard.
+     *
+     * By default the empty checkerboard is drawn once into a cached image,
+     * and after a move only the squares that changed are repainted.  Setting
+     * the system property checkers.fullRepaint goes back to redrawing every
+     * square on every repaint.
      */
     private class Board extends JPanel implements ActionListener, MouseListener {
 
@@ -105,7 +167,23 @@ public class Checkers extends JPanel {
         CheckersMove[] legalMoves;  // An array containing the legal moves for the
         //   current player.
 
-        AlphaBetaSearch player = new AlphaBetaSearch(); // AI player
+        CheckersEngine player; // AI player
+
+        GameHistory history = new GameHistory();  // The position after every turn so far,
+        //   used to find repetitions and games that
+        //   aren't going anywhere.
+
+        final boolean cachedRendering = !Boolean.getBoolean("checkers.fullRepaint");
+
+        final boolean showStats = Boolean.getBoolean("checkers.showStats");
+
+        GameClock clock;  // The time each player has left, or null if the game is untimed.
+
+        TimeManager timeManager = new TimeManager();  // Decides how long the AI may think.
+
+        BufferedImage background;  // The empty checkerboard at the current square size,
+        //   or null if it has not been drawn yet.  Only
+        //   used when cachedRendering is on.
 
         /**
          * Constructor.  Create the buttons and label.  Listens for mouse
@@ -122,11 +200,70 @@ public class Checkers extends JPanel {
             message = new JLabel("",JLabel.CENTER);
             message.setFont(new  Font("Serif", Font.BOLD, 14));
             message.setForeground(Color.green);
-            board = new CheckersData();
+            int size = Integer.getInteger("checkers.boardSize", CheckersData.DEFAULT_SIZE);
+            board = new CheckersData(size);
+            clock = parseTimeControl(System.getProperty("checkers.timeControl"));
+            SearchConfig.Builder config = new SearchConfig.Builder().boardSize(size);
+            String ttFile = System.getProperty("checkers.ttFile");
+            if (ttFile != null)
+                config.transpositionTableFile(Paths.get(ttFile));
+            String networkFile = System.getProperty("checkers.network");
+            if (networkFile != null)
+                config.networkFile(Paths.get(networkFile));
+            if (clock != null) {
+                config.maxDepth(64);  // the clock decides how deep to go instead
+                clockLabel = new JLabel("", JLabel.CENTER);
+                clockLabel.setFont(new Font("Monospaced", Font.BOLD, 14));
+                clockLabel.setForeground(Color.white);
+                new Timer(100, evt -> tickClock()).start();
+            }
+            if ("mcts".equals(System.getProperty("checkers.engine"))) {
+                config.threads(Integer.getInteger("checkers.threads", Runtime.getRuntime().availableProcessors()));
+                player = new MonteCarloSearch(config.build());
+            } else {
+                player = new AlphaBetaSearch(config.build());
+            }
             doNewGame();
         }
 
 
+        /**
+         * Make a clock from a time control like "5+3", minutes for the game plus
+         * seconds added after each move.  Returns null if there is no time control.
+         */
+        GameClock parseTimeControl(String timeControl) {
+            if (timeControl == null || timeControl.isEmpty())
+                return null;
+            String[] parts = timeControl.split("\\+");
+            long millis = Math.round(Double.parseDouble(parts[0]) * 60_000);
+            if (parts.length == 1)
+                return GameClock.suddenDeath(millis);
+            return GameClock.increment(millis, Math.round(Double.parseDouble(parts[1]) * 1000));
+        }
+
+
+        /**
+         * Called a few times a second when there is a clock.  Shows the time both
+         * players have left, and ends the game if the human player runs out.
+         */
+        void tickClock() {
+            if (gameInProgress && currentPlayer == CheckersData.RED && clock.isFlagged(CheckersData.RED)) {
+                gameOver("RED ran out of time.  BLACK wins.");
+            }
+            clockLabel.setText("<html>RED&nbsp;&nbsp;&nbsp;" + clock.format(CheckersData.RED)
+                    + "<br>BLACK " + clock.format(CheckersData.BLACK) + "</html>");
+        }
+
+
+        /**
+         * How long the AI may think about its next move, or null to search to
+         * the full depth if there is no clock.
+         */
+        SearchLimits aiLimits() {
+            return clock == null ? null : timeManager.limitsFor(clock, CheckersData.BLACK);
+        }
+
+
         /**
          * Respond to user's click on one of the two buttons.
          */
@@ -150,13 +287,18 @@ public class Checkers extends JPanel {
             }
             board.setUpGame();   // Set up the pieces.
             currentPlayer = CheckersData.RED;   // RED moves first.
-            player.setCheckersData(board);
+            history.clear();
+            history.push(board.hash(CheckersData.RED), true);
             legalMoves = board.getLegalMoves(CheckersData.RED);  // Get RED's legal moves.
             selectedRow = -1;   // RED has not yet selected a piece to move.
             message.setText("Red:  Make your move.");
             gameInProgress = true;
             newGameButton.setEnabled(false);
             resignButton.setEnabled(true);
+            if (clock != null) {
+                clock.reset();
+                clock.start(CheckersData.RED);
+            }
             repaint();
         }
 
@@ -183,6 +325,9 @@ public class Checkers extends JPanel {
          * ends at any point in this class.
          */
         void gameOver(String str) {
+            repaintHighlights();  // highlights are only drawn while a game is in progress
+            if (clock != null)
+                clock.pause();
             message.setText(str);
             newGameButton.setEnabled(true);
             resignButton.setEnabled(false);
@@ -190,6 +335,24 @@ public class Checkers extends JPanel {
         }
 
 
+        /**
+         * End the game as a draw if the position that was just reached has now come
+         * up three times, or if there hasn't been a capture or a man moved for too
+         * long.  Returns true if the game ended.
+         */
+        boolean checkForDraw() {
+            if (history.repetitions() >= 3) {
+                gameOver("Same position three times.  It's a draw.");
+                return true;
+            }
+            if (history.quietPlies() >= player.getConfig().noProgressPlies()) {
+                gameOver("No captures or men moved in " + history.quietPlies() + " turns.  It's a draw.");
+                return true;
+            }
+            return false;
+        }
+
+
         /**
          * This is called by mousePressed() when a player clicks on the
          * square in the specified row and col.  It has already been checked
@@ -203,13 +366,14 @@ public class Checkers extends JPanel {
                case it was previously displaying an error message. */
             for (CheckersMove legalMove : legalMoves) {
                 if (legalMove.fromRow == row && legalMove.fromCol == col) {
+                    repaintHighlights();  // clear the old selection
                     selectedRow = row;
                     selectedCol = col;
                     if (currentPlayer == CheckersData.RED)
                         message.setText("RED:  Make your move.");
                     else
                         message.setText("BLACK:  Make your move.");
-                    repaint();
+                    repaintHighlights();
                     return;
                 }
             }
@@ -247,8 +411,10 @@ public class Checkers extends JPanel {
          */
         void doMakeMove(CheckersMove move) {
 
+            repaintHighlights();  // the old highlights all go away
+            boolean progress = board.isProgressMove(move);
             boolean isKingJump = board.makeMove(move);
-            repaint();
+            repaintMove(move);
 
             /* If the move was a jump, it's possible that the player has another
                jump.  Check for legal jumps starting from the square that the player
@@ -263,7 +429,7 @@ public class Checkers extends JPanel {
                         message.setText("BLACK:  You must continue jumping.");
                     selectedRow = move.toRow;  // Since only one piece can be moved, select it.
                     selectedCol = move.toCol;
-                    repaint();
+                    repaintHighlights();
                     return;
                 }
             }
@@ -272,41 +438,66 @@ public class Checkers extends JPanel {
                 Get that player's legal moves.  If the player has no legal moves,
                 then the game ends. */
             if (currentPlayer == CheckersData.RED) {
+                if (clock != null && !clock.stop()) {
+                    gameOver("RED ran out of time.  BLACK wins.");
+                    return;
+                }
+                history.push(board.hash(CheckersData.BLACK), progress);
                 currentPlayer = CheckersData.BLACK;
                 legalMoves = board.getLegalMoves(currentPlayer);
                 if (legalMoves == null) {
                     gameOver("BLACK has no moves.  RED wins.");
+                    return;
+                } else if (checkForDraw()) {
+                    return;
                 } else {
                     message.setText("BLACK:  Now AI's turn.");
                 }
 
-                CheckersMove moveAI = player.makeMove(legalMoves);
+                SearchStats stats = new SearchStats();
+                if (clock != null)
+                    clock.start(CheckersData.BLACK);
+                SearchLimits limits = aiLimits();
+                CheckersMove moveAI = player.chooseMove(board, CheckersData.BLACK, history, legalMoves, stats, limits);
+                if (showStats)
+                    System.out.println(limits == null ? stats.toString() : stats + ", time " + limits);
+                boolean progressAI = board.isProgressMove(moveAI);
                 boolean isKingJumpAI = board.makeMove(moveAI);
+                repaintMove(moveAI);
                 while (!isKingJumpAI && moveAI.isJump()) {
                     legalMoves = board.getLegalJumpsFrom(currentPlayer,moveAI.toRow, moveAI.toCol);
                     if (legalMoves != null) {
                         message.setText("BLACK:  AI has another jump.");
                         selectedRow = move.toRow;  // Since only one piece can be moved, select it.
                         selectedCol = move.toCol;
-                        repaint();
-                        moveAI = player.makeMove(legalMoves);
+                        moveAI = player.chooseMove(board, CheckersData.BLACK, null, legalMoves, null, aiLimits());
                         board.makeMove(moveAI);
+                        repaintMove(moveAI);
                     } else {
                         break;
                     }
                 }
-                repaint();
+                history.push(board.hash(CheckersData.RED), progressAI);
+                if (clock != null && !clock.stop()) {
+                    gameOver("BLACK ran out of time.  RED wins.");
+                    return;
+                }
             }
 
             currentPlayer = CheckersData.RED;
             legalMoves = board.getLegalMoves(currentPlayer);
             if (legalMoves == null)
                 gameOver("RED has no moves.  BLACK wins.");
+            else if (checkForDraw())
+                ; // the game is over, checkForDraw already said why
             else if (legalMoves[0].isJump())
                 message.setText("RED:  Make your move.  You must jump.");
             else
                 message.setText("RED:  Make your move.");
 
+            if (gameInProgress && clock != null)
+                clock.start(CheckersData.RED);
+
             /* Set selectedRow = -1 to record that the player has not yet selected
                a piece to move. */
             selectedRow = -1;
@@ -328,80 +519,193 @@ public class Checkers extends JPanel {
                 }
             }
 
-            /* Make sure the board is redrawn in its new state. */
-            repaint();
+            /* Make sure the new highlights are drawn.  The squares the pieces
+               moved through were already repainted as the moves were made. */
+            repaintHighlights();
         }  // end doMakeMove();
 
 
         /**
-         * Draw a checkerboard pattern in gray and lightGray.  Draw the
-         * checkers.  If a game is in progress, highlight the legal moves.
+         * The size in pixels of one square of the board, which is as big as
+         * the panel allows.
          */
-        @Override
-        public void paintComponent(Graphics g) {
+        int squareSize() {
+            int rows = board.size();
+            return Math.max(1, (Math.min(getWidth(), getHeight()) - 4) / rows);
+        }
 
-            /* Draw a two-pixel black border around the edges of the canvas. */
 
-            g.setColor(Color.black);
-            g.drawRect(0,0,getSize().width-1,getSize().height-1);
-            g.drawRect(1,1,getSize().width-3,getSize().height-3);
+        /**
+         * Mark one square as needing to be redrawn.  When cachedRendering is
+         * off, the whole board is redrawn instead.
+         */
+        void repaintSquare(int row, int col) {
+            if (!cachedRendering) {
+                repaint();
+                return;
+            }
+            int size = squareSize();
+            repaint(2 + col*size, 2 + row*size, size, size);
+        }
+
+
+        /**
+         * Mark the squares changed by a move that was just made: where the
+         * piece came from, where it went, and the piece it jumped, if any.
+         */
+        void repaintMove(CheckersMove move) {
+            repaintSquare(move.fromRow, move.fromCol);
+            repaintSquare(move.toRow, move.toCol);
+            if (move.isJump())
+                repaintSquare((move.fromRow + move.toRow) / 2, (move.fromCol + move.toCol) / 2);
+        }
+
+
+        /**
+         * Mark every square that currently has a highlight.  This is called
+         * both before and after the highlights change, so the old ones get
+         * erased and the new ones get drawn.
+         */
+        void repaintHighlights() {
+            if (legalMoves == null)
+                return;
+            for (CheckersMove legalMove : legalMoves) {
+                repaintSquare(legalMove.fromRow, legalMove.fromCol);
+                repaintSquare(legalMove.toRow, legalMove.toCol);
+            }
+            if (selectedRow >= 0)
+                repaintSquare(selectedRow, selectedCol);
+        }
 
-            /* Draw the squares of the checkerboard and the checkers. */
 
-            for (int row = 0; row < 8; row++) {
-                for (int col = 0; col < 8; col++) {
+        /**
+         * Draw the empty checkerboard: a two-pixel black border and the
+         * squares in gray and lightGray.
+         */
+        void drawCheckerboard(Graphics g, int rows, int size) {
+            g.setColor(Color.black);
+            g.drawRect(0, 0, rows*size + 3, rows*size + 3);
+            g.drawRect(1, 1, rows*size + 1, rows*size + 1);
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < rows; col++) {
                     if ( row % 2 == col % 2 )
                         g.setColor(Color.LIGHT_GRAY);
                     else
                         g.setColor(Color.GRAY);
-                    g.fillRect(2 + col*20, 2 + row*20, 20, 20);
+                    g.fillRect(2 + col*size, 2 + row*size, size, size);
+                }
+            }
+        }
+
+
+        /**
+         * Get the cached image of the empty checkerboard, redrawing it if the
+         * square size has changed since it was made.
+         */
+        BufferedImage checkerboardImage(int rows, int size) {
+            int pixels = rows*size + 4;
+            if (background == null || background.getWidth() != pixels) {
+                background = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = background.createGraphics();
+                drawCheckerboard(g, rows, size);
+                g.dispose();
+            }
+            return background;
+        }
+
+
+        /**
+         * Draw a 2-pixel border just inside the given square.
+         */
+        void drawSquareBorder(Graphics g, int row, int col, int size) {
+            g.drawRect(2 + col*size, 2 + row*size, size - 1, size - 1);
+            g.drawRect(3 + col*size, 3 + row*size, size - 3, size - 3);
+        }
+
+
+        /**
+         * Draw a checkerboard pattern in gray and lightGray.  Draw the
+         * checkers.  If a game is in progress, highlight the legal moves.
+         *
+         * Only the squares inside the clip are drawn, so a repaint of a few
+         * squares only costs those squares.
+         */
+        @Override
+        public void paintComponent(Graphics g) {
+
+            int rows = board.size();
+            int size = squareSize();
+
+            /* Draw the border and the squares of the checkerboard, either from
+               the cached image or from scratch. */
+
+            if (cachedRendering)
+                g.drawImage(checkerboardImage(rows, size), 0, 0, null);
+            else
+                drawCheckerboard(g, rows, size);
+
+            /* Draw the checkers on the squares that need it. */
+
+            Rectangle clip = g.getClipBounds();
+            if (clip == null)
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            int firstRow = Math.max(0, (clip.y - 2) / size);
+            int lastRow = Math.min(rows - 1, (clip.y + clip.height - 3) / size);
+            int firstCol = Math.max(0, (clip.x - 2) / size);
+            int lastCol = Math.min(rows - 1, (clip.x + clip.width - 3) / size);
+
+            int inset = size / 10;        // the checkers are 3/4 of a square, with a small margin
+            int diameter = size * 3 / 4;
+            g.setFont(getFont().deriveFont(Math.max(6f, size * 0.6f)));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int x = 2 + col*size;
+                    int y = 2 + row*size;
                     switch (board.pieceAt(row,col)) {
                         case CheckersData.RED:
                             g.setColor(Color.RED);
-                            g.fillOval(4 + col*20, 4 + row*20, 15, 15);
+                            g.fillOval(x + inset, y + inset, diameter, diameter);
                             break;
                         case CheckersData.BLACK:
                             g.setColor(Color.BLACK);
-                            g.fillOval(4 + col*20, 4 + row*20, 15, 15);
+                            g.fillOval(x + inset, y + inset, diameter, diameter);
                             break;
                         case CheckersData.RED_KING:
                             g.setColor(Color.RED);
-                            g.fillOval(4 + col*20, 4 + row*20, 15, 15);
+                            g.fillOval(x + inset, y + inset, diameter, diameter);
                             g.setColor(Color.WHITE);
-                            g.drawString("K", 7 + col*20, 16 + row*20);
+                            g.drawString("K", x + size*5/20, y + size*14/20);
                             break;
                         case CheckersData.BLACK_KING:
                             g.setColor(Color.BLACK);
-                            g.fillOval(4 + col*20, 4 + row*20, 15, 15);
+                            g.fillOval(x + inset, y + inset, diameter, diameter);
                             g.setColor(Color.WHITE);
-                            g.drawString("K", 7 + col*20, 16 + row*20);
+                            g.drawString("K", x + size*5/20, y + size*14/20);
                             break;
                     }
                 }
             }
 
          /* If a game is in progress, highlight the legal moves.   Note that legalMoves
-          is never null while a game is in progress. */
+          is never null while a game is in progress.  Anything outside the clip is
+          thrown away by the Graphics, so there is no need to filter these. */
 
             if (gameInProgress) {
                 /* First, draw a 2-pixel cyan border around the pieces that can be moved. */
                 g.setColor(Color.cyan);
                 for (CheckersMove legalMove : legalMoves) {
-                    g.drawRect(2 + legalMove.fromCol * 20, 2 + legalMove.fromRow * 20, 19, 19);
-                    g.drawRect(3 + legalMove.fromCol * 20, 3 + legalMove.fromRow * 20, 17, 17);
+                    drawSquareBorder(g, legalMove.fromRow, legalMove.fromCol, size);
                 }
                /* If a piece is selected for moving (i.e. if selectedRow >= 0), then
                 draw a 2-pixel white border around that piece and draw green borders
                 around each square that that piece can be moved to. */
                 if (selectedRow >= 0) {
                     g.setColor(Color.white);
-                    g.drawRect(2 + selectedCol*20, 2 + selectedRow*20, 19, 19);
-                    g.drawRect(3 + selectedCol*20, 3 + selectedRow*20, 17, 17);
+                    drawSquareBorder(g, selectedRow, selectedCol, size);
                     g.setColor(Color.green);
                     for (CheckersMove legalMove : legalMoves) {
                         if (legalMove.fromCol == selectedCol && legalMove.fromRow == selectedRow) {
-                            g.drawRect(2 + legalMove.toCol * 20, 2 + legalMove.toRow * 20, 19, 19);
-                            g.drawRect(3 + legalMove.toCol * 20, 3 + legalMove.toRow * 20, 17, 17);
+                            drawSquareBorder(g, legalMove.toRow, legalMove.toCol, size);
                         }
                     }
                 }
@@ -420,9 +724,11 @@ public class Checkers extends JPanel {
             if (!gameInProgress)
                 message.setText("Click \"New Game\" to start a new game.");
             else {
-                int col = (evt.getX() - 2) / 20;
-                int row = (evt.getY() - 2) / 20;
-                if (col >= 0 && col < 8 && row >= 0 && row < 8)
+                int rows = board.size();
+                int size = squareSize();
+                int col = (evt.getX() - 2) / size;
+                int row = (evt.getY() - 2) / size;
+                if (evt.getX() >= 2 && evt.getY() >= 2 && col < rows && row < rows)
                     doClickSquare(row,col);
             }
         }
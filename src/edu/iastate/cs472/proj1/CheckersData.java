@@ -1,9 +1,6 @@
 package edu.iastate.cs472.proj1;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * @author cswoods
@@ -13,6 +10,10 @@ import java.util.List;
  * Note that RED moves "up" the board (i.e. row number decreases)
  * while BLACK moves "down" the board (i.e. row number increases).
  * Methods are provided to return lists of available legal moves.
+ *
+ * The board can be any even size from 4 by 4 to 10 by 10.  The pieces are kept
+ * as bitboards, one bit per playable square, laid out as described in BoardGeometry,
+ * so the move generator works on whole rows of pieces at once with shifts and masks.
  */
 public class CheckersData {
 
@@ -27,15 +28,48 @@ public class CheckersData {
             BLACK = 3,
             BLACK_KING = 4;
 
+    static final int DEFAULT_SIZE = 8; // the size of a normal checkerboard
+
+    /*  Random keys for Zobrist hashing.  The hash of a position is the XOR of the key
+        for each (piece, square) pair on the board, so a move only has to XOR out
+        and in the squares it changes.  The seed is fixed so hashes are the same in
+        every run. */
+    private static final long[] PIECE_KEYS = new long[(BLACK_KING + 1) * 64];
+    private static final long BLACK_TO_MOVE_KEY;
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C4EC_6E25L);
+        for (int i = 64; i < PIECE_KEYS.length; i++) { // EMPTY squares have no key
+            PIECE_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+    private static final int[] OTHER_COLOR = {EMPTY, BLACK, BLACK_KING, RED, RED_KING}; // indexed by piece
+
+
+    final BoardGeometry geometry;  // the size of the board and which bit is which square
 
-    int[][] board;  // board[r][c] is the contents of row r, column c.
+    long red;    // a bit for every square with a red piece on it
+    long black;  // a bit for every square with a black piece on it
+    long kings;  // a bit for every square with a king of either color on it
+
+    private long hash;  // Zobrist hash of the pieces on the board, kept up to date by makeMove.
+    private long mirrorHash;  // and the same for the mirror image of the board, see canonicalHash
 
 
     /**
      * Constructor.  Create the board and set it up for a new game.
      */
     CheckersData() {
-        board = new int[8][8];
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a board with the given number of rows and columns, and set it up for a new game.
+     *
+     * @param size an even number from 4 to 10
+     */
+    CheckersData(int size) {
+        geometry = BoardGeometry.of(size);
         setUpGame();
     }
 
@@ -45,9 +79,107 @@ public class CheckersData {
      * @param original
      */
     CheckersData(CheckersData original) {
-        board = new int[8][8];
-        for (int i = 0; i < board.length; i++) {
-            board[i] = original.board[i].clone();
+        geometry = original.geometry;
+        copyFrom(original);
+    }
+
+    /**
+     * Overwrite this board with the contents of another one, without allocating anything.
+     * The search uses this to reuse its scratch boards instead of cloning at every node.
+     *
+     * @param original the board to copy from, which must be the same size
+     */
+    void copyFrom(CheckersData original) {
+        if (original.geometry != geometry)
+            throw new IllegalArgumentException("can't copy a " + original.size() + "x" + original.size()
+                    + " board onto a " + size() + "x" + size() + " board");
+        red = original.red;
+        black = original.black;
+        kings = original.kings;
+        hash = original.hash;
+        mirrorHash = original.mirrorHash;
+    }
+
+    /**
+     * Turn this board into its mirror image: turned around, with the colors swapped.  With the
+     * other player to move, it's the same position seen from the other side.
+     */
+    void mirror() {
+        long oldRed = red;
+        red = geometry.mirror(black);
+        black = geometry.mirror(oldRed);
+        kings = geometry.mirror(kings);
+        long oldHash = hash;
+        hash = mirrorHash;
+        mirrorHash = oldHash;
+    }
+
+    /**
+     * @return the number of rows (and columns) on this board
+     */
+    int size() {
+        return geometry.size;
+    }
+
+    /**
+     * Return a hash of this position with the given player to move.  Two positions
+     * with the same pieces and the same player to move always have the same hash.
+     *
+     * @param player the player whose turn it is, RED or BLACK
+     */
+    long hash(int player) {
+        return player == BLACK ? hash ^ BLACK_TO_MOVE_KEY : hash;
+    }
+
+    /**
+     * Return a hash that is the same for this position and for its mirror image: the board
+     * turned around, with the colors swapped and the other player to move.  Red moving up
+     * from one is exactly black moving down from the other, so the two have the same moves
+     * and negated scores, and a table keyed on this only has to hold one of them.
+     *
+     * @param player the player whose turn it is, RED or BLACK, or EMPTY for a hash of just
+     *               the pieces, for things like the evaluation that don't care whose turn it is
+     * @return the smaller of hash(player) and the hash of the mirror image
+     */
+    long canonicalHash(int player) {
+        return Math.min(hash(player), mirrorHash(player));
+    }
+
+    /**
+     * @return true if canonicalHash(player) is the hash of the mirror image rather than of
+     *         this position, so whatever is stored under it is from the other side's point
+     *         of view.  A position that is its own mirror image is never mirrored.
+     */
+    boolean isMirrored(int player) {
+        return mirrorHash(player) < hash(player);
+    }
+
+    /**
+     * The hash the mirror image of this position has, which has the other player to move
+     * (and no one, if no one is to move here either).
+     */
+    private long mirrorHash(int player) {
+        return player == RED ? mirrorHash ^ BLACK_TO_MOVE_KEY : mirrorHash;
+    }
+
+    /**
+     * XOR a piece on a bit in or out of both hashes.  In the mirror image the piece is the
+     * other color, on the square turned around the middle of the board.
+     */
+    private void toggle(int piece, int bit) {
+        hash ^= PIECE_KEYS[piece * 64 + bit];
+        mirrorHash ^= PIECE_KEYS[OTHER_COLOR[piece] * 64 + geometry.mirrorBit(bit)];
+    }
+
+    /**
+     * Recompute the hash from scratch, after the board was changed without makeMove.
+     */
+    private void rehash() {
+        hash = 0;
+        mirrorHash = 0;
+        for (long pieces = red | black; pieces != 0; pieces &= pieces - 1) {
+            int bit = Long.numberOfTrailingZeros(pieces);
+            toggle(pieceAtBit(bit), bit);
         }
     }
 
@@ -59,10 +191,11 @@ public class CheckersData {
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
-        for (int i = 0; i < board.length; i++) {
-            int[] row = board[i];
-            sb.append(8 - i).append(" ");
-            for (int n : row) {
+        for (int i = 0; i < size(); i++) {
+            String label = String.valueOf(size() - i);
+            sb.append(label).append(" ".repeat(labelWidth() - label.length())).append(" ");
+            for (int j = 0; j < size(); j++) {
+                int n = pieceAt(i, j);
                 if (n == 0) {
                     sb.append(" ");
                 } else if (n == 1) {
@@ -78,34 +211,36 @@ public class CheckersData {
             }
             sb.append(System.lineSeparator());
         }
-        sb.append("  a b c d e f g h");
+        sb.append(" ".repeat(labelWidth() + 1));
+        for (int j = 0; j < size(); j++) {
+            sb.append((char) ('a' + j)).append(j < size() - 1 ? " " : "");
+        }
 
         return sb.toString();
     }
 
+    private int labelWidth() {
+        return String.valueOf(size()).length();
+    }
+
     /**
      * Set up the board with checkers in position for the beginning
      * of a game.  Note that checkers can only be found in squares
      * that satisfy  row % 2 == col % 2.  At the start of the game,
-     * all such squares in the first three rows contain black squares
-     * and all such squares in the last three rows contain red squares.
+     * all such squares in the first (size - 2) / 2 rows (three on a
+     * normal board) contain black squares and all such squares in
+     * the last (size - 2) / 2 rows contain red squares.
      */
     void setUpGame() {
-        // note: since it's an array of primitives, everything is by default initialized to 0 = EMPTY
-        // but if it's after a game was already played we have to fix the middle rows.
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (i % 2 == j % 2) { // we need to place a piece
-                    if (i < 3) { // we should place a black piece
-                        board[i][j] = BLACK;
-                    } else if (i >= board.length - 3) { // we should place a red piece
-                        board[i][j] = RED;
-                    } else {
-                        board[i][j] = EMPTY;
-                    }
-                }
-            }
+        red = 0;
+        black = 0;
+        kings = 0;
+        int rowsOfMen = (size() - 2) / 2;
+        for (int i = 0; i < rowsOfMen; i++) {
+            black |= geometry.rows[i];
+            red |= geometry.rows[size() - 1 - i];
         }
+        rehash();
     }
 
 
@@ -113,7 +248,69 @@ public class CheckersData {
      * Return the contents of the square in the specified row and column.
      */
     int pieceAt(int row, int col) {
-        return board[row][col];
+        int bit = geometry.bit(row, col);
+        return bit < 0 ? EMPTY : pieceAtBit(bit);
+    }
+
+    /**
+     * Return the contents of the square with the given bit.
+     */
+    private int pieceAtBit(int bit) {
+        long mask = 1L << bit;
+        if ((red & mask) != 0)
+            return (kings & mask) != 0 ? RED_KING : RED;
+        if ((black & mask) != 0)
+            return (kings & mask) != 0 ? BLACK_KING : BLACK;
+        return EMPTY;
+    }
+
+    /**
+     * Take every piece off the board, to set up a position with putPiece.
+     */
+    void clearBoard() {
+        red = 0;
+        black = 0;
+        kings = 0;
+        rehash();
+    }
+
+    /**
+     * Put a piece on a square, or take whatever is there off it with EMPTY.
+     *
+     * @param piece EMPTY, RED, RED_KING, BLACK or BLACK_KING
+     * @throws IllegalArgumentException if the square isn't one pieces can be on
+     */
+    void putPiece(int row, int col, int piece) {
+        int bit = geometry.bit(row, col);
+        if (bit < 0)
+            throw new IllegalArgumentException("no piece can be on row " + row + ", column " + col);
+        int old = pieceAtBit(bit);
+        if (old != EMPTY)
+            toggle(old, bit);
+        long mask = 1L << bit;
+        red &= ~mask;
+        black &= ~mask;
+        kings &= ~mask;
+        if (piece == EMPTY)
+            return;
+        if (piece == RED || piece == RED_KING)
+            red |= mask;
+        else
+            black |= mask;
+        if (piece == RED_KING || piece == BLACK_KING)
+            kings |= mask;
+        toggle(piece, bit);
+    }
+
+
+    /**
+     * Return true if the specified move is "progress", meaning it can never be undone:
+     * either it is a capture, or it moves a man (which can only go forward).  This has
+     * to be called before the move is made.
+     */
+    boolean isProgressMove(CheckersMove move) {
+        int piece = pieceAt(move.fromRow, move.fromCol);
+        return move.isJump() || piece == RED || piece == BLACK;
     }
 
 
@@ -141,22 +338,51 @@ public class CheckersData {
      * @return        true if the piece becomes a king, otherwise false
      */
     private boolean makeMove(int fromRow, int fromCol, int toRow, int toCol, boolean isJump) {
+        return makeMove(geometry.bit(fromRow, fromCol), geometry.bit(toRow, toCol), isJump);
+    }
+
+    /**
+     * Make the move from one bit to another, like makeMove(CheckersMove).  This is for
+     * code that keeps moves as bits, see getLegalMoveBits.
+     *
+     * @return true if the piece becomes a king, otherwise false
+     */
+    boolean makeMove(int from, int to, boolean isJump) {
+        long fromMask = 1L << from;
+        long toMask = 1L << to;
+
         // 1. move the piece from (fromRow,fromCol) to (toRow,toCol)
-        board[toRow][toCol] = pieceAt(fromRow, fromCol);
-        board[fromRow][fromCol] = EMPTY;
-        // 2. if this move is a jump, remove the captured piece
+        int piece = pieceAtBit(from);
+        if ((red & fromMask) != 0)
+            red ^= fromMask | toMask;
+        else
+            black ^= fromMask | toMask;
+        if ((kings & fromMask) != 0)
+            kings ^= fromMask | toMask;
+        toggle(piece, from);
+        // 2. if this move is a jump, remove the captured piece.  both halves of a jump
+        //    are the same shift, so the jumped square is exactly halfway between
         if (isJump) {
-            board[(fromRow + toRow) / 2][(fromCol + toCol) / 2] = EMPTY;
+            int jumped = (from + to) >>> 1;
+            toggle(pieceAtBit(jumped), jumped);
+            long jumpedMask = ~(1L << jumped);
+            red &= jumpedMask;
+            black &= jumpedMask;
+            kings &= jumpedMask;
         }
         // 3. if the piece moves into the kings row on the opponent's side of the board, crowned it as a king
-        if (toRow == 0 && pieceAt(toRow, toCol) == RED) { // make a red king if it reached the top
-            board[toRow][toCol] = RED_KING;
-        } else if (toRow == board.length - 1 && pieceAt(toRow, toCol) == BLACK) { // make a black king if it reached the bottom
-            board[toRow][toCol] = BLACK_KING;
+        boolean crowned = true;
+        if (piece == RED && (toMask & geometry.topRow) != 0) { // make a red king if it reached the top
+            piece = RED_KING;
+        } else if (piece == BLACK && (toMask & geometry.bottomRow) != 0) { // make a black king if it reached the bottom
+            piece = BLACK_KING;
         } else { // no king here
-            return false;
+            crowned = false;
         }
-        return true;
+        if (crowned)
+            kings |= toMask;
+        toggle(piece, to);
+        return crowned;
     }
 
     /**
@@ -171,202 +397,190 @@ public class CheckersData {
      * @param player color of the player, RED or BLACK
      */
     CheckersMove[] getLegalMoves(int player) {
-        List<CheckersMove> legalMoves = new ArrayList<>();
-
-        // try to find any jumps
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (i % 2 == j % 2) { // checkers are only on every other square
-                    CheckersMove[] jumps = getLegalJumpsFrom(player, i, j);
-                    if (jumps != null)
-                        legalMoves.addAll(Arrays.asList(jumps));
-                }
-            }
-        }
+        long pieces = piecesOf(player);
+
         // if we have jumps, return them
-        if (!legalMoves.isEmpty())
-            return legalMoves.toArray(new CheckersMove[0]);
-
-        // try to find any legal non-jumps (walks)
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (i % 2 == j % 2) { // checkers are only on every other square
-                    legalMoves.addAll(getLegalWalksFrom(player, i, j));
-                }
-            }
-        }
-        // if we have walks, return them
-        if (!legalMoves.isEmpty())
-            return legalMoves.toArray(new CheckersMove[0]);
+        CheckersMove[] jumps = getJumps(player, pieces);
+        if (jumps != null)
+            return jumps;
 
-        return null;
+        // otherwise try to find any legal non-jumps (walks)
+        return getWalks(player, pieces);
     }
 
     /**
-     * Added helper method.
-     *
-     * Return a list of the legal non-jumps (walks) that the specified
-     * player can make starting from the specified row and column.
-     * If no such "walks" are possible, an empty list is returned.
+     * Return a list of the legal jumps that the specified player can
+     * make starting from the specified row and column.  If no such
+     * jumps are possible, null is returned.  The logic is similar
+     * to the logic of the getLegalMoves() method.
      *
      * @param player The player of the current jump, either RED or BLACK.
      * @param row    row index of the start square.
      * @param col    col index of the start square.
      */
-    private List<CheckersMove> getLegalWalksFrom(int player, int row, int col) {
-        int piece = pieceAt(row, col);
-        boolean canWalkDown = false; // if the given piece has the ability to walk down
-        boolean canWalkUp = false; // if the given piece has the ability to walk up
-
-        if (player == RED) {
-            if (piece == RED) {
-                canWalkUp = true;
-            } else if (piece == RED_KING) {
-                canWalkUp = true;
-                canWalkDown = true;
-            } else {
-                return Collections.emptyList();
-            }
-        } else { // black player
-            if (piece == BLACK) {
-                canWalkDown = true;
-            } else if (piece == BLACK_KING) {
-                canWalkUp = true;
-                canWalkDown = true;
-            } else {
-                return Collections.emptyList();
-            }
-        }
-
-        List<CheckersMove> legalWalks = new ArrayList<>(4); // we can find max 4 walks for each spot
+    CheckersMove[] getLegalJumpsFrom(int player, int row, int col) {
+        int bit = geometry.bit(row, col);
+        if (bit < 0)
+            return null;
+        return getJumps(player, piecesOf(player) & (1L << bit));
+    }
 
-        if (canWalkDown) {
-            if (row + 1 < board.length) { // check if we can walk down
-                if (col + 1 < board[0].length) { // check if we can walk right
-                    if (pieceAt(row + 1, col + 1) == EMPTY) { // check if we have space to move there
-                        legalWalks.add(new CheckersMove(row, col, row + 1, col + 1));
-                    }
-                }
-                if (col - 1 >= 0) { // check if we can walk left
-                    if (pieceAt(row + 1, col - 1) == EMPTY) { // check if we have space to move there
-                        legalWalks.add(new CheckersMove(row, col, row + 1, col - 1));
-                    }
-                }
-            }
-        }
+    /**
+     * Like getLegalMoves, but without making any objects: each move is written into out as
+     * its from bit plus its to bit times 256, see moveFrom, moveTo and isJumpBits.  Playouts
+     * generate moves millions of times a second, and this keeps them from allocating.
+     *
+     * @param player  the player to move, RED or BLACK
+     * @param fromBit -1 for every legal move, or the bit of a piece in the middle of a jumping
+     *                spree to get only the jumps it can make next
+     * @param out     where to put the moves, which must have room for all of them (4 per piece)
+     * @return how many moves there are, 0 if there are none
+     */
+    int getLegalMoveBits(int player, int fromBit, int[] out) {
+        long movers = fromBit < 0 ? piecesOf(player) : piecesOf(player) & (1L << fromBit);
+        long down = player == BLACK ? movers : movers & kings;
+        long up = player == RED ? movers : movers & kings;
+        long takeable = player == RED ? black : red;
+        long empty = geometry.playable & ~(red | black);
+        int right = geometry.downRight;
+        int left = geometry.downLeft;
+
+        // the same masks as getJumps
+        int n = addMoveBits(out, 0, down & ((takeable & (empty >>> right)) >>> right), 2 * right);
+        n = addMoveBits(out, n, down & ((takeable & (empty >>> left)) >>> left), 2 * left);
+        n = addMoveBits(out, n, up & ((takeable & (empty << right)) << right), -2 * right);
+        n = addMoveBits(out, n, up & ((takeable & (empty << left)) << left), -2 * left);
+        if (n > 0 || fromBit >= 0)
+            return n;
+
+        // and the same masks as getWalks
+        n = addMoveBits(out, n, down & (empty >>> right), right);
+        n = addMoveBits(out, n, down & (empty >>> left), left);
+        n = addMoveBits(out, n, up & (empty << right), -right);
+        return addMoveBits(out, n, up & (empty << left), -left);
+    }
 
-        if (canWalkUp) {
-            if (row - 1 >= 0) { // check if we can walk up
-                if (col + 1 < board[0].length) { // check if we can walk right
-                    if (pieceAt(row - 1, col + 1) == EMPTY) { // check if we have space to move there
-                        legalWalks.add(new CheckersMove(row, col, row - 1, col + 1));
-                    }
-                }
-                if (col - 1 >= 0) { // check if we can walk left
-                    if (pieceAt(row - 1, col - 1) == EMPTY) { // check if we have space to move there
-                        legalWalks.add(new CheckersMove(row, col, row - 1, col - 1));
-                    }
-                }
-            }
+    private static int addMoveBits(int[] out, int n, long from, int step) {
+        for (; from != 0; from &= from - 1) {
+            int bit = Long.numberOfTrailingZeros(from);
+            out[n++] = bit | (bit + step) << 8;
         }
-
-        return legalWalks;
+        return n;
     }
 
+    /**
+     * @return the from bit of a move from getLegalMoveBits
+     */
+    static int moveFrom(int move) {
+        return move & 0xFF;
+    }
 
     /**
-     * Return a list of the legal jumps that the specified player can
-     * make starting from the specified row and column.  If no such
-     * jumps are possible, null is returned.  The logic is similar
-     * to the logic of the getLegalWalksFrom() method.
-     *
-     * @param player The player of the current jump, either RED or BLACK.
-     * @param row    row index of the start square.
-     * @param col    col index of the start square.
+     * @return the to bit of a move from getLegalMoveBits
      */
-    CheckersMove[] getLegalJumpsFrom(int player, int row, int col) {
-        int piece = pieceAt(row, col);
-        boolean canJumpDown = false; // if the given piece has the ability to jump down
-        boolean canJumpUp = false; // if the given piece has the ability to jump up
-
-        if (player == RED) {
-            if (piece == RED) {
-                canJumpUp = true;
-            } else if (piece == RED_KING) {
-                canJumpUp = true;
-                canJumpDown = true;
-            } else {
-                return null;
-            }
-        } else { // black player
-            if (piece == BLACK) {
-                canJumpDown = true;
-            } else if (piece == BLACK_KING) {
-                canJumpUp = true;
-                canJumpDown = true;
-            } else {
-                return null;
-            }
-        }
+    static int moveTo(int move) {
+        return move >>> 8;
+    }
 
-        List<CheckersMove> legalJumps = new ArrayList<>(4); // we can find max 4 jumps for each spot
+    /**
+     * @return true if a move from getLegalMoveBits is a jump
+     */
+    boolean isJumpBits(int move) {
+        // a walk goes size/2 or size/2 + 1 bits, and a jump twice that
+        return Math.abs(moveTo(move) - moveFrom(move)) > geometry.downLeft;
+    }
 
-        if (canJumpDown) {
-            if (row + 2 < board.length) { // check if we can jump downwards
-                if (col + 2 < board[0].length) { // check if we can jump right
-                    if (pieceAt(row + 2, col + 2) == EMPTY) { // check if we have space to move there
-                        if (canTakeAs(pieceAt(row + 1, col + 1), player)) { // check if we have something to jump over that we can take
-                            legalJumps.add(new CheckersMove(row, col, row + 2, col + 2));
-                        }
-                    }
-                }
-                if (col - 2 >= 0) { // check if we can jump left
-                    if (pieceAt(row + 2, col - 2) == EMPTY) { // check if we have space to move there
-                        if (canTakeAs(pieceAt(row + 1, col - 1), player)) { // check if we have something to jump over that we can take
-                            legalJumps.add(new CheckersMove(row, col, row + 2, col - 2));
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * @return the bits of every piece the given player has, or 0 if player isn't RED or BLACK
+     */
+    private long piecesOf(int player) {
+        if (player == RED)
+            return red;
+        else if (player == BLACK)
+            return black;
+        return 0;
+    }
 
-        if (canJumpUp) {
-            if (row - 2 >= 0) { // check if we can jump upwards
-                if (col + 2 < board[0].length) { // check if we can jump right
-                    if (pieceAt(row - 2, col + 2) == EMPTY) { // check if we have space to move there
-                        if (canTakeAs(pieceAt(row - 1, col + 1), player)) { // check if we have something to jump over that we can take
-                            legalJumps.add(new CheckersMove(row, col, row - 2, col + 2));
-                        }
-                    }
-                }
-                if (col - 2 >= 0) { // check if we can jump left
-                    if (pieceAt(row - 2, col - 2) == EMPTY) { // check if we have space to move there
-                        if (canTakeAs(pieceAt(row - 1, col - 1), player)) { // check if we have something to jump over that we can take
-                            legalJumps.add(new CheckersMove(row, col, row - 2, col - 2));
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * Find every jump the given pieces can make.  Men can only jump forward, kings
+     * can jump both ways, and the square being jumped must have an opponent's piece
+     * on it.
+     *
+     * @param player the player that owns the pieces, RED or BLACK
+     * @param movers the pieces to find jumps for
+     * @return the jumps, or null if there are none
+     */
+    private CheckersMove[] getJumps(int player, long movers) {
+        long down = player == BLACK ? movers : movers & kings; // the pieces allowed to go down the board
+        long up = player == RED ? movers : movers & kings;     // the pieces allowed to go up the board
+        long takeable = player == RED ? black : red;
+        long empty = geometry.playable & ~(red | black);
+        int right = geometry.downRight;
+        int left = geometry.downLeft;
+
+        // a piece can jump one way if the next square that way has something to take
+        // and the square after that is empty
+        long downRight = down & ((takeable & (empty >>> right)) >>> right);
+        long downLeft = down & ((takeable & (empty >>> left)) >>> left);
+        long upLeft = up & ((takeable & (empty << right)) << right);
+        long upRight = up & ((takeable & (empty << left)) << left);
+
+        int count = Long.bitCount(downRight) + Long.bitCount(downLeft)
+                + Long.bitCount(upLeft) + Long.bitCount(upRight);
+        if (count == 0) return null;
+
+        CheckersMove[] jumps = new CheckersMove[count];
+        int n = addMoves(jumps, 0, downRight, 2 * right);
+        n = addMoves(jumps, n, downLeft, 2 * left);
+        n = addMoves(jumps, n, upLeft, -2 * right);
+        addMoves(jumps, n, upRight, -2 * left);
+        return jumps;
+    }
 
-        if (legalJumps.isEmpty()) return null;
-        return legalJumps.toArray(new CheckersMove[0]);
+    /**
+     * Find every non-jump (walk) the given pieces can make.  Men can only walk forward,
+     * kings can walk both ways, and the square walked to must be empty.
+     *
+     * @param player the player that owns the pieces, RED or BLACK
+     * @param movers the pieces to find walks for
+     * @return the walks, or null if there are none
+     */
+    private CheckersMove[] getWalks(int player, long movers) {
+        long down = player == BLACK ? movers : movers & kings;
+        long up = player == RED ? movers : movers & kings;
+        long empty = geometry.playable & ~(red | black);
+        int right = geometry.downRight;
+        int left = geometry.downLeft;
+
+        long downRight = down & (empty >>> right);
+        long downLeft = down & (empty >>> left);
+        long upLeft = up & (empty << right);
+        long upRight = up & (empty << left);
+
+        int count = Long.bitCount(downRight) + Long.bitCount(downLeft)
+                + Long.bitCount(upLeft) + Long.bitCount(upRight);
+        if (count == 0) return null;
+
+        CheckersMove[] walks = new CheckersMove[count];
+        int n = addMoves(walks, 0, downRight, right);
+        n = addMoves(walks, n, downLeft, left);
+        n = addMoves(walks, n, upLeft, -right);
+        addMoves(walks, n, upRight, -left);
+        return walks;
     }
 
     /**
-     * Helper method to determine if the given player is allowed
-     * to take the given target piece, returning true if it can and false otherwise.
+     * Add a move for every bit in from, each going to the square step bits away.
      *
-     * @param piece The piece that we are trying to take
-     * @param player The player that is attempting to capture the piece
-     * @return
+     * @return the index after the last move that was added
      */
-    private boolean canTakeAs(int piece, int player) {
-        if (player == RED)
-            return piece == BLACK || piece == BLACK_KING;
-        else if (player == BLACK)
-            return piece == RED || piece == RED_KING;
-        return false;
+    private int addMoves(CheckersMove[] moves, int n, long from, int step) {
+        for (; from != 0; from &= from - 1) {
+            int bit = Long.numberOfTrailingZeros(from);
+            moves[n++] = new CheckersMove(geometry.rowOf(bit), geometry.colOf(bit),
+                    geometry.rowOf(bit + step), geometry.colOf(bit + step));
+        }
+        return n;
     }
 
-}
\ No newline at end of file
+}
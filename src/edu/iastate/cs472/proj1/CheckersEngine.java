@@ -0,0 +1,31 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * Something that can choose moves for the AI player.  Checkers.Board only talks to the AI
+ * through this, so AlphaBetaSearch and MonteCarloSearch can be swapped for each other.
+ */
+public interface CheckersEngine {
+
+    /**
+     * Choose the best move for the given player out of the legal moves.
+     *
+     * @param board      The current board, which is not modified.
+     * @param player     The player to move, RED or BLACK.
+     * @param history    The positions of the game so far, or null if not known. This is not modified.
+     * @param legalMoves All the legal moves for the player, which may be the jumps that continue a
+     *                   jumping spree.
+     * @param stats      If not null, the counts for this search are added to it.
+     * @param limits     How long the search may take, see TimeManager, or null to search as far
+     *                   as the config says.
+     * @return one of legalMoves
+     */
+    CheckersMove chooseMove(CheckersData board, int player, GameHistory history, CheckersMove[] legalMoves,
+                            SearchStats stats, SearchLimits limits);
+
+    /**
+     * @return the settings this engine was made with
+     */
+    SearchConfig getConfig();
+}
@@ -22,4 +22,9 @@ public class CheckersMove {
         // rows.  (In a regular move, it only moves one row.)
         return (fromRow - toRow == 2 || fromRow - toRow == -2);
     }
+    @Override
+    public String toString() {
+        // Rows and columns are counted from the top left, like in CheckersData.
+        return "(" + fromRow + "," + fromCol + ")-(" + toRow + "," + toCol + ")";
+    }
 }  // end class CheckersMove.
\ No newline at end of file
@@ -0,0 +1,95 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Arrays;
+
+/**
+ * @author cswoods
+ *
+ * A fixed-size cache of static evaluations, keyed by position hash, so a position the
+ * search reaches again (by another move order, at another depth, or in a later search)
+ * doesn't have to be evaluated again.
+ *
+ * Every search using the same SearchContextPool shares one cache, without any locking.
+ * Each slot is one long: the top 48 bits of the hash, and the score (which always fits in
+ * 16 bits, see Score) in the bottom 16.  A long is written all at once, so two threads
+ * writing the same slot can't leave half of each behind.  A reader only trusts a slot if
+ * its top bits match the hash it wants.  New entries always replace old ones.
+ *
+ * The cache can be resized between searches, to follow its share of a MemoryBudget, which
+ * empties it.
+ */
+final class EvalCache {
+
+    static final int MISS = Integer.MIN_VALUE; // what probe returns when the position isn't there
+
+    static final int BYTES_PER_ENTRY = Long.BYTES;
+    static final int MAX_ENTRIES = 1 << 30; // the biggest power of two an array can have
+
+    private static final long SCORE_BITS = 0xFFFF;
+
+    // only resize() changes this, so read it once and take the mask from its length
+    private volatile long[] slots;
+
+    /**
+     * @param entries how many positions to hold, rounded down to a power of two, or 0 for no cache
+     */
+    EvalCache(int entries) {
+        slots = new long[sizeFor(entries)];
+    }
+
+    /**
+     * @return how many positions a cache made for the given number of entries holds
+     */
+    static int sizeFor(int entries) {
+        return entries <= 0 ? 0 : Integer.highestOneBit(entries);
+    }
+
+    /**
+     * Change how many positions the cache holds.  Everything in it is thrown away, since
+     * evaluations are cheap to find again.
+     *
+     * @param entries how many positions to hold, rounded down to a power of two, or 0 for no cache
+     */
+    void resize(int entries) {
+        if (sizeFor(entries) != slots.length)
+            slots = new long[sizeFor(entries)];
+    }
+
+    /**
+     * Forget every position.
+     */
+    void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+    /**
+     * @return the score stored for the position with the given hash, or MISS if there isn't one
+     */
+    int probe(long hash) {
+        long[] slots = this.slots;
+        if (slots.length == 0)
+            return MISS;
+        long slot = slots[(int) hash & (slots.length - 1)];
+        // an empty slot is 0, which only matches a hash with 48 zeros on top
+        if (((slot ^ hash) & ~SCORE_BITS) != 0 || slot == 0)
+            return MISS;
+        return (short) slot;
+    }
+
+    /**
+     * Remember the score of the position with the given hash.
+     */
+    void store(long hash, int score) {
+        long[] slots = this.slots;
+        if (slots.length == 0)
+            return;
+        slots[(int) hash & (slots.length - 1)] = (hash & ~SCORE_BITS) | (score & SCORE_BITS);
+    }
+
+    /**
+     * @return how many positions this cache can hold
+     */
+    int capacity() {
+        return slots.length;
+    }
+}
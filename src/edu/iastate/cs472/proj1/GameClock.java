@@ -0,0 +1,157 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * A chess clock for the two players of a game.  Each player starts with the same time,
+ * and only the clock of the player to move runs.  With an increment, a player gets the
+ * increment added back after each of their moves (Fischer style); with no increment it
+ * is sudden death, and the whole game has to be played in the starting time.
+ *
+ * A player whose time runs out has lost on time ("flagged").  This doesn't decide that
+ * by itself, it just reports it, and the game has to check.
+ *
+ * This is meant to be used by one thread, the one running the game.
+ */
+public final class GameClock {
+
+    private final long initialNanos;
+    private final long incrementNanos;
+
+    private final long[] remaining = new long[2]; // nanoseconds left, indexed by side(player)
+    private final int[] moves = new int[2];       // moves finished, indexed by side(player)
+    private int running = -1;                     // the player whose clock is running, or -1
+    private long startedAt;                       // System.nanoTime() when it started running
+
+    /**
+     * A clock where each player has the given time for the whole game.
+     */
+    public static GameClock suddenDeath(long millis) {
+        return new GameClock(millis, 0);
+    }
+
+    /**
+     * A clock where each player starts with the given time and gets the increment added
+     * after every move they make.
+     */
+    public static GameClock increment(long millis, long incrementMillis) {
+        return new GameClock(millis, incrementMillis);
+    }
+
+    private GameClock(long millis, long incrementMillis) {
+        if (millis <= 0)
+            throw new IllegalArgumentException("the starting time must be positive, was " + millis);
+        if (incrementMillis < 0)
+            throw new IllegalArgumentException("the increment can't be negative, was " + incrementMillis);
+        initialNanos = millis * 1_000_000;
+        incrementNanos = incrementMillis * 1_000_000;
+        reset();
+    }
+
+    /**
+     * Put both clocks back to the starting time and stop them, for a new game.
+     */
+    public void reset() {
+        remaining[0] = remaining[1] = initialNanos;
+        moves[0] = moves[1] = 0;
+        running = -1;
+    }
+
+    /**
+     * Start the clock of the given player, who is now to move.
+     */
+    public void start(int player) {
+        if (running != -1)
+            throw new IllegalStateException("the clock of " + name(running) + " is already running");
+        running = player;
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Stop the running clock because its player finished their move, charging them the time
+     * it took and adding the increment.  The increment is not added if they ran out of time.
+     *
+     * @return false if the player ran out of time before moving
+     */
+    public boolean stop() {
+        if (running == -1)
+            throw new IllegalStateException("no clock is running");
+        int side = side(running);
+        remaining[side] -= System.nanoTime() - startedAt;
+        running = -1;
+        if (remaining[side] <= 0) {
+            remaining[side] = 0;
+            return false;
+        }
+        remaining[side] += incrementNanos;
+        moves[side]++;
+        return true;
+    }
+
+    /**
+     * Stop the running clock without charging anyone, e.g. when the game ends.
+     */
+    public void pause() {
+        if (running != -1)
+            remaining[side(running)] -= System.nanoTime() - startedAt;
+        running = -1;
+    }
+
+    /**
+     * @return how many milliseconds the given player has left, counting the move in progress
+     */
+    public long remainingMillis(int player) {
+        return remainingNanos(player) / 1_000_000;
+    }
+
+    /**
+     * @return how many nanoseconds the given player has left, counting the move in progress
+     */
+    public long remainingNanos(int player) {
+        long left = remaining[side(player)];
+        if (running == player)
+            left -= System.nanoTime() - startedAt;
+        return Math.max(0, left);
+    }
+
+    /**
+     * @return true if the given player has run out of time
+     */
+    public boolean isFlagged(int player) {
+        return remainingNanos(player) == 0;
+    }
+
+    /**
+     * @return how many milliseconds are added after each move, 0 for sudden death
+     */
+    public long incrementMillis() {
+        return incrementNanos / 1_000_000;
+    }
+
+    /**
+     * @return how many moves the given player has finished
+     */
+    public int movesMade(int player) {
+        return moves[side(player)];
+    }
+
+    /**
+     * Format a player's time as m:ss, or m:ss.t when there is less than a minute left.
+     */
+    public String format(int player) {
+        long millis = remainingMillis(player);
+        long minutes = millis / 60_000;
+        long seconds = millis / 1000 % 60;
+        if (minutes == 0)
+            return String.format("%d:%02d.%d", minutes, seconds, millis / 100 % 10);
+        return String.format("%d:%02d", minutes, seconds);
+    }
+
+    private static int side(int player) {
+        return player == CheckersData.RED || player == CheckersData.RED_KING ? 0 : 1;
+    }
+
+    private static String name(int player) {
+        return side(player) == 0 ? "RED" : "BLACK";
+    }
+}
@@ -0,0 +1,107 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Arrays;
+
+/**
+ * @author cswoods
+ *
+ * A stack of the positions a game has been through, so we can tell when a position
+ * repeats or when nothing has happened for a long time.
+ *
+ * One entry is pushed each time a turn ends, holding the hash of the new position
+ * (including whose turn it is, see CheckersData.hash) and how many plies have gone
+ * by since the last "progress" move, meaning a capture or a man moving.  Neither of
+ * those can ever be undone, so no position before the last progress move can come
+ * up again, and repetition checks only have to look back that far.
+ *
+ * The GUI keeps one of these for the real game, and every search keeps one for the
+ * game plus the line it is currently looking at.
+ */
+public final class GameHistory {
+
+    private long[] hashes;
+    private int[] quietPlies; // quietPlies[i] is how many plies before entry i the last progress move was
+    private int size;
+
+    public GameHistory() {
+        this(64);
+    }
+
+    GameHistory(int capacity) {
+        hashes = new long[Math.max(capacity, 1)];
+        quietPlies = new int[hashes.length];
+    }
+
+    /**
+     * Forget every position, e.g. for a new game.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Make this history the same as another one.
+     */
+    void copyFrom(GameHistory original) {
+        ensureCapacity(original.size);
+        System.arraycopy(original.hashes, 0, hashes, 0, original.size);
+        System.arraycopy(original.quietPlies, 0, quietPlies, 0, original.size);
+        size = original.size;
+    }
+
+    /**
+     * Record the position a turn ended on.
+     *
+     * @param hash     the hash of the position, with the player who moves next
+     * @param progress true if the turn was a capture or moved a man
+     */
+    void push(long hash, boolean progress) {
+        ensureCapacity(size + 1);
+        hashes[size] = hash;
+        quietPlies[size] = (progress || size == 0) ? 0 : quietPlies[size - 1] + 1;
+        size++;
+    }
+
+    /**
+     * Take back the last position that was pushed.
+     */
+    void pop() {
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return how many plies it has been since a capture or a man moving
+     */
+    public int quietPlies() {
+        return size == 0 ? 0 : quietPlies[size - 1];
+    }
+
+    /**
+     * @return how many times the current position has occurred, counting this time
+     */
+    public int repetitions() {
+        if (size == 0)
+            return 0;
+        long current = hashes[size - 1];
+        int count = 1;
+        // the same player has to be moving, so only every other position can match
+        int oldest = size - 1 - quietPlies[size - 1];
+        for (int i = size - 3; i >= oldest; i -= 2) {
+            if (hashes[i] == current)
+                count++;
+        }
+        return count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > hashes.length) {
+            int newLength = Math.max(capacity, hashes.length * 2);
+            hashes = Arrays.copyOf(hashes, newLength);
+            quietPlies = Arrays.copyOf(quietPlies, newLength);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package edu.iastate.cs472.proj1;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author cswoods
+ *
+ * A fixed number of bytes for the big tables of every engine that shares it: transposition
+ * tables, eval caches, MonteCarloSearch node pools and ProofNumberSearch tables.  Each
+ * table takes a Share when it is made and sizes itself from it, so however many engines
+ * there are, together they stay within the budget.
+ *
+ * The bytes are split by weight between the tables that are alive right now.  When a new
+ * engine comes along, everyone else's share shrinks to make room, and when an engine is
+ * garbage collected, the others grow back into what it had.  A table only changes size
+ * where it is safe to, between searches when no search is using it, and what doesn't fit
+ * anymore is thrown away.  A table given a fixed size in its SearchConfig keeps that size, and the others
+ * split what it leaves.
+ *
+ * The budget is a target more than a hard limit.  Every table gets at least 1024 entries, so
+ * with a lot of engines on a tiny budget they can take more than it together, and tables
+ * with a fixed size take what they were given even if that is more than the whole budget.
+ *
+ * Every engine whose config doesn't say otherwise uses DEFAULT, which is one budget for the
+ * whole JVM.  It is 64 MB, unless the system property checkers.memory says otherwise, in
+ * bytes or with a k, m or g after the number, e.g. -Dcheckers.memory=512m.
+ */
+public final class MemoryBudget {
+
+    /**
+     * The budget of every engine that isn't given one.
+     */
+    public static final MemoryBudget DEFAULT = new MemoryBudget(parseBytes(System.getProperty("checkers.memory", "64m")));
+
+    private static final int MIN_ENTRIES = 1 << 10; // no table gets smaller than this, however tight it is
+
+    private final long bytes;
+    private final List<Share> shares = new ArrayList<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>(); // owners the GC took
+
+    /**
+     * @param bytes how many bytes all the tables sharing this budget may take together
+     */
+    public MemoryBudget(long bytes) {
+        if (bytes < 1)
+            throw new IllegalArgumentException("a memory budget needs at least 1 byte, was " + bytes);
+        this.bytes = bytes;
+    }
+
+    /**
+     * One table's part of a budget.  The table checks entries() between searches, when no
+     * search is using it, and resizes to it if it changed, then says how many bytes it now
+     * takes with using().
+     */
+    static final class Share {
+        final String name;
+        private final MemoryBudget budget;
+        private final WeakReference<Object> owner; // the share goes away with its owner
+        private final int weight;
+        private final int bytesPerEntry;
+        private final int maxEntries;
+        private boolean fixed;
+        private volatile int entries;
+        private volatile long used;
+
+        private Share(MemoryBudget budget, Object owner, String name, int weight, int bytesPerEntry, int maxEntries,
+                      int fixedEntries) {
+            this.budget = budget;
+            this.owner = new WeakReference<>(owner, budget.collected);
+            this.name = name;
+            this.weight = weight;
+            this.bytesPerEntry = bytesPerEntry;
+            this.maxEntries = maxEntries;
+            this.fixed = fixedEntries >= 0;
+            this.entries = fixed ? Math.min(fixedEntries, maxEntries) : MIN_ENTRIES;
+        }
+
+        /**
+         * @return how many entries the table should have now
+         */
+        int entries() {
+            budget.expunge();
+            return entries;
+        }
+
+        /**
+         * Say how many bytes the table takes now, for the budget's report.
+         */
+        void using(long bytes) {
+            used = bytes;
+        }
+
+        /**
+         * Keep the table at the given size from now on, for a table that can't be resized.
+         */
+        void fix(int entries) {
+            budget.fix(this, entries);
+        }
+
+        /**
+         * Give the share back before the owner is garbage collected, so the others can grow now.
+         */
+        void release() {
+            budget.release(this);
+        }
+    }
+
+    /**
+     * Take a share of this budget for a table.
+     *
+     * @param owner         what the table belongs to.  The share is given back once the owner
+     *                      is garbage collected, if release() wasn't called first
+     * @param name          what kind of table it is, for the report
+     * @param weight        how big a part this table gets compared to the others
+     * @param bytesPerEntry how many bytes one entry of the table takes
+     * @param maxEntries    the most entries the table can hold, however big the budget is
+     * @param fixedEntries  how many entries the table has if its size was set by hand, or a
+     *                      negative number to size it from the budget
+     */
+    synchronized Share share(Object owner, String name, int weight, int bytesPerEntry, int maxEntries,
+                             int fixedEntries) {
+        Share share = new Share(this, owner, name, weight, bytesPerEntry, maxEntries, fixedEntries);
+        shares.add(share);
+        rebalance();
+        return share;
+    }
+
+    /**
+     * Split the budget again if an owner was garbage collected since the last time, so its
+     * share goes to the others.  This is cheap when none was, which is nearly always.
+     */
+    private void expunge() {
+        if (collected.poll() == null)
+            return;
+        synchronized (this) {
+            while (collected.poll() != null) {
+                // rebalance drops every share whose owner is gone, not only these
+            }
+            rebalance();
+        }
+    }
+
+    private synchronized void fix(Share share, int entries) {
+        share.fixed = true;
+        share.entries = Math.min(entries, share.maxEntries);
+        rebalance();
+    }
+
+    private synchronized void release(Share share) {
+        if (shares.remove(share))
+            rebalance();
+    }
+
+    /**
+     * Split the budget again between the shares that are left.  The tables with a fixed size
+     * come off the top, and the rest is split by weight.  Every table's entries are a power of
+     * two, so a share is rounded down to one, and never past what the table can hold.  The
+     * floor of MIN_ENTRIES isn't taken out of anyone else's share, which is how a tight budget
+     * ends up overdrawn.
+     */
+    private void rebalance() {
+        shares.removeIf(share -> share.owner.get() == null);
+        long fixedBytes = 0;
+        long weights = 0;
+        for (Share share : shares) {
+            if (share.fixed)
+                fixedBytes += (long) share.entries * share.bytesPerEntry;
+            else
+                weights += share.weight;
+        }
+        long free = Math.max(0, bytes - fixedBytes);
+        for (Share share : shares) {
+            if (share.fixed)
+                continue;
+            long entries = free / weights * share.weight / share.bytesPerEntry;
+            share.entries = (int) Math.max(MIN_ENTRIES, Long.highestOneBit(Math.min(entries, share.maxEntries)));
+        }
+    }
+
+    /**
+     * @return how many bytes all the tables may take together
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return how many bytes all the tables take right now
+     */
+    public synchronized long used() {
+        long used = 0;
+        for (Share share : shares) {
+            if (share.owner.get() != null)
+                used += share.used;
+        }
+        return used;
+    }
+
+    /**
+     * @return how many bytes each kind of table takes right now, all of that kind together
+     */
+    public synchronized Map<String, Long> usage() {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        for (Share share : shares) {
+            if (share.owner.get() != null)
+                usage.merge(share.name, share.used, Long::sum);
+        }
+        return usage;
+    }
+
+    /**
+     * @return a few lines saying what every table takes and what it will take after its next
+     *         resize, if that's different
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("memory budget %s, %s in use%n", format(bytes), format(used())));
+        for (Share share : shares) {
+            if (share.owner.get() == null)
+                continue;
+            long target = (long) share.entries * share.bytesPerEntry;
+            sb.append(String.format("  %-22s %10s", share.name, format(share.used)));
+            if (share.fixed)
+                sb.append("  (fixed size)");
+            else if (target != share.used)
+                sb.append("  (going to ").append(format(target)).append(')');
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static String format(long bytes) {
+        if (bytes >= 1 << 30)
+            return String.format("%.1f GB", bytes / (double) (1 << 30));
+        if (bytes >= 1 << 20)
+            return String.format("%.1f MB", bytes / (double) (1 << 20));
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+
+    /**
+     * Read a number of bytes, with an optional k, m or g after it.
+     */
+    static long parseBytes(String text) {
+        String number = text.trim().toLowerCase();
+        long unit = 1;
+        if (number.endsWith("k") || number.endsWith("m") || number.endsWith("g")) {
+            unit = number.endsWith("k") ? 1L << 10 : number.endsWith("m") ? 1L << 20 : 1L << 30;
+            number = number.substring(0, number.length() - 1);
+        }
+        try {
+            return Long.parseLong(number) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number of bytes: " + text, e);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author cswoods
+ *
+ * Monte Carlo tree search: instead of evaluating positions, play lots of quick games out
+ * to the end from them and see who wins.  Each playout walks down the tree picking moves
+ * by UCT (the move with the best win rate, plus a bonus for moves that haven't been tried
+ * much), adds a node to the tree where it falls off the bottom, plays a light random game
+ * from there, and adds the result to every node it went through.  The move played is the
+ * one the most playouts went through.
+ *
+ * Since nothing is evaluated until the game is over, it doesn't have AlphaBetaSearch's
+ * blind spot for long-term king play that the evaluation can't see.
+ *
+ * The tree grows on config.threads() threads at once (tree parallelism).  A thread going
+ * down through a node counts a visit there before its playout is done, which is a loss
+ * until the result comes in (a "virtual loss"), so the other threads spread out over
+ * other moves instead of all piling into the same one.  There are no alpha-beta bounds to
+ * share, just counters, so this scales with cores.
+ *
+ * Playouts generate moves as bits (see CheckersData.getLegalMoveBits) and the tree is a
+ * preallocated MonteCarloTree, so a search doesn't allocate anything while it runs.  The
+ * tree is sized from the config's MemoryBudget, and made again at the start of a search if
+ * its share changed since the last one.
+ *
+ * Unlike AlphaBetaSearch this doesn't look for repetitions, only for the no-progress rule.
+ * An engine only searches one position at a time; use one engine per game to play several
+ * games at once.
+ */
+public class MonteCarloSearch implements CheckersEngine {
+
+    private static final int DRAW = CheckersData.EMPTY; // the "winner" of a drawn game
+
+    // a playout this long is stopped and scored on material, see materialWinner
+    private static final int MAX_PLAYOUT_PLIES = 200;
+    // the deepest a playout goes down the tree before playing out from there
+    private static final int MAX_TREE_DEPTH = 512;
+
+    private final SearchConfig config;
+    private MonteCarloTree tree; // only chooseMove replaces it, before the workers start
+    private final MemoryBudget.Share treeShare; // how big the tree should be
+    private final Worker[] workers;
+
+    // the search that is running, set up by chooseMove before the workers start
+    private final CheckersData root;
+    private int rootPlayer;
+    private int rootQuietPlies;
+    private final AtomicInteger playoutsLeft = new AtomicInteger();
+    private long deadline;
+    private boolean timed;
+    private volatile boolean stopping;
+
+    /**
+     * Create a search with the default config.
+     */
+    public MonteCarloSearch() {
+        this(SearchConfig.DEFAULT);
+    }
+
+    public MonteCarloSearch(SearchConfig config) {
+        this.config = config;
+        treeShare = config.memoryBudget().share(this, "monte carlo tree", 4, MonteCarloTree.BYTES_PER_NODE,
+                MonteCarloTree.MAX_NODES, config.treeNodes());
+        tree = new MonteCarloTree(treeShare.entries());
+        treeShare.using((long) tree.capacity() * MonteCarloTree.BYTES_PER_NODE);
+        root = new CheckersData(config.boardSize());
+        workers = new Worker[config.threads()];
+        SplittableRandom seeds = new SplittableRandom();
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(seeds.split());
+        }
+    }
+
+    @Override
+    public SearchConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Choose a move by running playouts until the limits' soft time is up, or until
+     * config.playouts() have been run if there are no limits.  Limits on nodes are taken
+     * as a number of playouts.
+     */
+    @Override
+    public synchronized CheckersMove chooseMove(CheckersData board, int player, GameHistory history,
+                                                CheckersMove[] legalMoves, SearchStats stats, SearchLimits limits) {
+        if (board.size() != config.boardSize())
+            throw new IllegalArgumentException("this search is for " + config.boardSize() + "x" + config.boardSize()
+                    + " boards, not " + board.size() + "x" + board.size());
+        if (legalMoves.length == 1)
+            return legalMoves[0]; // nothing to think about
+
+        // the children of the root are exactly the legal moves we were given, in the same order
+        root.copyFrom(board);
+        rootPlayer = player;
+        rootQuietPlies = history == null ? 0 : history.quietPlies();
+        if (tree.capacity() != treeShare.entries()) {
+            tree = null; // so the old one can go before the new one is made
+            tree = new MonteCarloTree(treeShare.entries());
+            treeShare.using((long) tree.capacity() * MonteCarloTree.BYTES_PER_NODE);
+        }
+        tree.clear();
+        int first = tree.allocate(legalMoves.length);
+        for (int i = 0; i < legalMoves.length; i++) {
+            CheckersMove move = legalMoves[i];
+            tree.move[first + i] = board.geometry.bit(move.fromRow, move.fromCol)
+                    | board.geometry.bit(move.toRow, move.toCol) << 8;
+        }
+        tree.firstChild[0] = first;
+        tree.childCount[0] = legalMoves.length;
+        tree.state.set(0, MonteCarloTree.EXPANDED);
+
+        timed = limits != null && limits.isTimed();
+        deadline = System.nanoTime() + (timed ? limits.softMillis() * 1_000_000 : 0);
+        // limits on nodes are a number of playouts
+        playoutsLeft.set(limits != null && !timed ? (int) Math.min(limits.maxNodes(), Integer.MAX_VALUE)
+                : config.playouts());
+        stopping = false;
+
+        // this thread is the first worker, and the rest get a thread of their own
+        Thread[] threads = new Thread[workers.length - 1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(workers[i + 1], "mcts-" + (i + 1));
+            threads[i].start();
+        }
+        workers[0].run();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                stopping = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long playouts = 0;
+        for (Worker worker : workers) {
+            if (worker.failure != null)
+                throw new IllegalStateException("a search thread failed", worker.failure);
+            playouts += worker.playouts;
+        }
+        if (stats != null) {
+            stats.playouts += playouts;
+            stats.nodes += tree.size();
+        }
+
+        // play the move the most playouts went through, which is the one we're surest of
+        int best = first;
+        for (int child = first + 1; child < first + legalMoves.length; child++) {
+            if (tree.visits.get(child) > tree.visits.get(best))
+                best = child;
+        }
+        return legalMoves[best - first];
+    }
+
+    /**
+     * Whether the search should stop.  Only looks at the clock every 16 playouts.
+     */
+    private boolean shouldStop(long playouts) {
+        if (stopping)
+            return true;
+        if (timed) {
+            if ((playouts & 15) == 0 && System.nanoTime() - deadline > 0)
+                stopping = true;
+        } else if (playoutsLeft.getAndDecrement() <= 0) {
+            stopping = true;
+        }
+        return stopping;
+    }
+
+    private static int opponent(int player) {
+        return player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED;
+    }
+
+    /**
+     * One thread growing the tree, with its own scratch space so it never allocates.
+     */
+    private final class Worker implements Runnable {
+        private final SplittableRandom random;
+        private final CheckersData board = new CheckersData(config.boardSize());
+        private final int[] path = new int[MAX_TREE_DEPTH];   // the nodes this playout went through
+        private final int[] movers = new int[MAX_TREE_DEPTH]; // the player who made the move into each of them
+        private final int[] moves = new int[4 * 64];           // room for every move of every piece
+
+        // the state of the game being played on board
+        private int player;    // whose turn it is
+        private int jumpFrom;  // the bit of the piece that has to keep jumping, or -1
+        private int quietPlies; // plies since the last capture or man move
+
+        long playouts;
+        Throwable failure;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            playouts = 0;
+            failure = null;
+            try {
+                while (!shouldStop(playouts)) {
+                    playout();
+                    playouts++;
+                }
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                stopping = true;
+            }
+        }
+
+        /**
+         * Go down the tree from the root, add a node, play the game out, and count the result
+         * in every node on the way.
+         */
+        private void playout() {
+            MonteCarloTree tree = MonteCarloSearch.this.tree;
+            board.copyFrom(root);
+            player = rootPlayer;
+            jumpFrom = -1;
+            quietPlies = rootQuietPlies;
+
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            tree.visits.incrementAndGet(0);
+            int winner = -1;
+
+            while (winner == -1) {
+                int state = tree.state.get(node);
+                if (state == MonteCarloTree.LEAF && tree.visits.get(node) > 1
+                        && tree.state.compareAndSet(node, MonteCarloTree.LEAF, MonteCarloTree.EXPANDING)) {
+                    // second time here, so it's worth a place in the tree. (making a node for
+                    // every leaf that is only ever visited once would just fill up the pool.)
+                    state = expand(tree, node);
+                }
+                if (state != MonteCarloTree.EXPANDED || depth == path.length - 1)
+                    break;
+                if (tree.childCount[node] == 0) {
+                    winner = opponent(player); // no moves, so the player to move has lost
+                    break;
+                }
+
+                int child = select(tree, node);
+                tree.visits.incrementAndGet(child); // the virtual loss, until the result comes in
+                movers[depth + 1] = player;
+                play(tree.move[child]);
+                path[++depth] = child;
+                node = child;
+                if (quietPlies >= config.noProgressPlies())
+                    winner = DRAW;
+            }
+
+            if (winner == -1)
+                winner = playOut();
+
+            for (int i = 1; i <= depth; i++) {
+                int points = winner == movers[i] ? 2 : winner == DRAW ? 1 : 0;
+                if (points > 0)
+                    tree.points.addAndGet(path[i], points);
+            }
+        }
+
+        /**
+         * Give a node that this thread holds in the EXPANDING state its children.
+         *
+         * @return the new state of the node
+         */
+        private int expand(MonteCarloTree tree, int node) {
+            int count = board.getLegalMoveBits(player, jumpFrom, moves);
+            int first = count == 0 ? 0 : tree.allocate(count);
+            if (first < 0) {
+                // out of nodes. it stays a leaf, and the tree just stops growing
+                tree.state.set(node, MonteCarloTree.LEAF);
+                return MonteCarloTree.LEAF;
+            }
+            System.arraycopy(moves, 0, tree.move, first, count);
+            tree.firstChild[node] = first;
+            tree.childCount[node] = count;
+            tree.state.set(node, MonteCarloTree.EXPANDED); // this publishes the children to the other threads
+            return MonteCarloTree.EXPANDED;
+        }
+
+        /**
+         * Pick the child to go down by UCT.  Children nobody has tried yet go first.
+         */
+        private int select(MonteCarloTree tree, int node) {
+            int first = tree.firstChild[node];
+            int end = first + tree.childCount[node];
+            double logVisits = Math.log(tree.visits.get(node));
+            double exploration = config.exploration();
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < end; child++) {
+                int visits = tree.visits.get(child);
+                if (visits == 0)
+                    return child;
+                double value = tree.points.get(child) / (2.0 * visits)
+                        + exploration * Math.sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Play a quick game out from where the board is now.  The moves are random, except
+         * that a man that can be crowned always is, which is enough to keep the playouts
+         * from wandering around and missing the obvious.
+         *
+         * @return the winner, RED or BLACK, or DRAW
+         */
+        private int playOut() {
+            for (int ply = 0; ply < MAX_PLAYOUT_PLIES; ply++) {
+                int count = board.getLegalMoveBits(player, jumpFrom, moves);
+                if (count == 0)
+                    return opponent(player);
+                play(moves[pickMove(count)]);
+                if (quietPlies >= config.noProgressPlies())
+                    return DRAW;
+            }
+            return materialWinner();
+        }
+
+        private int pickMove(int count) {
+            long crowning = player == CheckersData.RED ? board.geometry.topRow : board.geometry.bottomRow;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if ((board.kings & (1L << CheckersData.moveFrom(move))) == 0
+                        && (crowning & (1L << CheckersData.moveTo(move))) != 0)
+                    return i;
+            }
+            return random.nextInt(count);
+        }
+
+        /**
+         * Make a move on the board, and work out whose turn it is after it.
+         */
+        private void play(int move) {
+            int from = CheckersData.moveFrom(move);
+            int to = CheckersData.moveTo(move);
+            boolean isJump = board.isJumpBits(move);
+            boolean progress = isJump || (board.kings & (1L << from)) == 0;
+            boolean crowned = board.makeMove(from, to, isJump);
+            quietPlies = progress ? 0 : quietPlies + 1;
+
+            // like in the game, a jump that can keep going has to, unless it was just crowned
+            if (isJump && !crowned && board.getLegalMoveBits(player, to, moves) > 0) {
+                jumpFrom = to;
+            } else {
+                jumpFrom = -1;
+                player = opponent(player);
+            }
+        }
+
+        /**
+         * Decide a playout that went on too long: a side a piece or more ahead wins, counting
+         * a king as a piece and a half, and anything closer is a draw.
+         */
+        private int materialWinner() {
+            double red = Long.bitCount(board.red) + 0.5 * Long.bitCount(board.red & board.kings);
+            double black = Long.bitCount(board.black) + 0.5 * Long.bitCount(board.black & board.kings);
+            if (red - black >= 1)
+                return CheckersData.RED;
+            if (black - red >= 1)
+                return CheckersData.BLACK;
+            return DRAW;
+        }
+    }
+}
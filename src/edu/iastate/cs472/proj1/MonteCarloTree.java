@@ -0,0 +1,91 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @author cswoods
+ *
+ * The node pool of a MonteCarloSearch.  Every node of the tree is an index into these
+ * arrays, all made up front, so growing the tree never allocates and a search can throw
+ * its whole tree away by resetting one counter.  The children of a node are always next
+ * to each other, so a node only has to know its first child and how many there are.
+ *
+ * Several threads grow the tree at once.  The counts they all update are atomic, and
+ * a node is expanded by whichever thread wins the compare-and-set on its state, which
+ * publishes its children to the others when it sets the state to EXPANDED.
+ */
+final class MonteCarloTree {
+
+    // the state of a node
+    static final int LEAF = 0;      // no children yet
+    static final int EXPANDING = 1; // a thread is making its children right now
+    static final int EXPANDED = 2;  // its children are ready, and 0 children means the player to move has lost
+
+    static final int BYTES_PER_NODE = 6 * Integer.BYTES; // one int in each array
+    static final int MAX_NODES = 1 << 30;
+
+    final int[] move;       // the move into each node, as from CheckersData.getLegalMoveBits
+    final int[] firstChild;
+    final int[] childCount;
+    final AtomicIntegerArray state;
+    final AtomicIntegerArray visits; // playouts through the node, including ones still running
+    final AtomicIntegerArray points; // 2 per win and 1 per draw, for the player who made the move into the node
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity the most nodes the tree can have
+     */
+    MonteCarloTree(int capacity) {
+        move = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        state = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        points = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Throw the whole tree away and start a new one with just a root.  No other thread may
+     * be using the tree while this runs.
+     */
+    void clear() {
+        size.set(0);
+        allocate(1);
+    }
+
+    /**
+     * Take the given number of fresh nodes, next to each other, out of the pool.
+     *
+     * @return the first of them, or -1 if the pool is out of nodes
+     */
+    int allocate(int count) {
+        int first;
+        do {
+            first = size.get();
+            if (first > move.length - count)
+                return -1;
+        } while (!size.compareAndSet(first, first + count));
+        for (int node = first; node < first + count; node++) {
+            state.set(node, LEAF);
+            visits.set(node, 0);
+            points.set(node, 0);
+        }
+        return first;
+    }
+
+    /**
+     * @return how many nodes are in use
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the most nodes the tree can have
+     */
+    int capacity() {
+        return move.length;
+    }
+}
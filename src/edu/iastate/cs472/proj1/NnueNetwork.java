@@ -0,0 +1,335 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author cswoods
+ *
+ * A small quantized neural network that can take the place of the handcrafted evaluation
+ * in AlphaBetaSearch, in the style of the NNUE networks chess engines use.
+ *
+ * The inputs are one feature per (kind of piece, square): red men, red kings, black men
+ * and black kings, each indexed by bit, so 256 of them.  The first layer is the big one,
+ * with 16-bit weights, but a move only turns a few features on or off, so instead of
+ * computing it from scratch the search keeps its sums (the "accumulator") for every ply
+ * and only adds and subtracts the weights of the features a move changed.  What's left
+ * per evaluation is the small layers on top:
+ *
+ *   accumulator (16 bit) -> clamp to 0..127 -> hidden2 units, 8-bit weights, 32-bit sums,
+ *   shifted down by 6 -> clamp to 0..127 -> one output, 8-bit weights
+ *
+ * and the output divided by outputScale is the score in pieces for red, which evaluate()
+ * gives in centi-pieces like the handcrafted evaluation.
+ * Everything is integer math, so it runs the same on any CPU.
+ *
+ * Networks are read from a file, all little-endian:
+ *
+ *   int magic "CKNN", int version, int board size, int hidden, int hidden2, int outputScale,
+ *   short[256 * hidden] first layer weights, feature by feature, short[hidden] first layer biases,
+ *   byte[hidden * hidden2] second layer weights, input by input, int[hidden2] second layer biases,
+ *   byte[hidden2] output weights, int output bias
+ *
+ * There is no training code here.  Running this class writes a network that adds up the
+ * same piece values as the handcrafted evaluation, one first layer unit per row and color.
+ * That is something to start training from, and it plays about the same as the handcrafted one.
+ *
+ * Usage: java edu.iastate.cs472.proj1.NnueNetwork network-file [board size]
+ */
+public final class NnueNetwork {
+
+    static final int MAGIC = 0x4E4E4B43; // "CKNN" as a little-endian int
+    static final int VERSION = 1;
+    static final int FEATURES = 4 * 64;
+
+    private static final int ACTIVATION_MAX = 127; // both hidden layers are clamped to 0..127
+    private static final int SHIFT = 6;            // the second layer's weights are scaled by 64
+
+    final int boardSize;
+    final int hidden;
+    final int hidden2;
+    private final int outputScale;        // output units per piece
+    private final short[] featureWeights; // FEATURES * hidden
+    private final short[] featureBiases;  // hidden
+    private final byte[] hiddenWeights;   // hidden * hidden2, the weights from each first layer unit together
+    private final int[] hiddenBiases;     // hidden2
+    private final byte[] outputWeights;   // hidden2
+    private final int outputBias;
+    final long identity; // a hash of the file the network was loaded from, or 0 if it wasn't
+
+    /**
+     * The first layer sums for one position, with the pieces they were worked out for.
+     * The search keeps one of these per ply.
+     */
+    static final class Accumulator {
+        final short[] values;
+        final int[] sums;       // scratch space for evaluate
+        long red, black, kings; // the pieces the values are for
+
+        private Accumulator(NnueNetwork network) {
+            values = network.featureBiases.clone(); // the values for an empty board
+            sums = new int[network.hidden2];
+        }
+    }
+
+    private NnueNetwork(int boardSize, int hidden, int hidden2, int outputScale) {
+        this.boardSize = boardSize;
+        this.hidden = hidden;
+        this.hidden2 = hidden2;
+        this.outputScale = outputScale;
+        featureWeights = new short[FEATURES * hidden];
+        featureBiases = new short[hidden];
+        hiddenWeights = new byte[hidden2 * hidden];
+        hiddenBiases = new int[hidden2];
+        outputWeights = new byte[hidden2];
+        outputBias = 0;
+        identity = 0;
+    }
+
+    private NnueNetwork(ByteBuffer in, Path file, long identity) throws IOException {
+        this.identity = identity;
+        if (in.getInt() != MAGIC)
+            throw new IOException(file + " is not a checkers network");
+        int version = in.getInt();
+        if (version != VERSION)
+            throw new IOException(file + " is network version " + version + ", but this reads version " + VERSION);
+        boardSize = in.getInt();
+        hidden = in.getInt();
+        hidden2 = in.getInt();
+        outputScale = in.getInt();
+        if (hidden < 1 || hidden2 < 1 || outputScale < 1 || hidden > 4096 || hidden2 > 4096)
+            throw new IOException(file + " has a bad header");
+        long expected = 24 + 2L * FEATURES * hidden + 2L * hidden + (long) hidden2 * hidden + 4L * hidden2
+                + hidden2 + 4;
+        if (in.capacity() != expected)
+            throw new IOException(file + " should be " + expected + " bytes for its size, but is " + in.capacity());
+
+        featureWeights = new short[FEATURES * hidden];
+        in.asShortBuffer().get(featureWeights);
+        in.position(in.position() + 2 * featureWeights.length);
+        featureBiases = new short[hidden];
+        in.asShortBuffer().get(featureBiases);
+        in.position(in.position() + 2 * hidden);
+        hiddenWeights = new byte[hidden2 * hidden];
+        in.get(hiddenWeights);
+        hiddenBiases = new int[hidden2];
+        in.asIntBuffer().get(hiddenBiases);
+        in.position(in.position() + 4 * hidden2);
+        outputWeights = new byte[hidden2];
+        in.get(outputWeights);
+        outputBias = in.getInt();
+    }
+
+    /**
+     * Read a network from a file.
+     */
+    static NnueNetwork load(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return new NnueNetwork(in, file, identity(bytes));
+        } catch (BufferUnderflowException e) {
+            throw new EOFException(file + " ends in the middle of the network");
+        }
+    }
+
+    /**
+     * @return a 64-bit FNV-1a hash of a network file, which is never 0, so it can't be
+     *         taken for the handcrafted evaluation, see TranspositionTable
+     */
+    private static long identity(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Write this network to a file in the format load reads.
+     */
+    void save(Path file) throws IOException {
+        long bytes = 24 + 2L * featureWeights.length + 2L * hidden + hiddenWeights.length + 4L * hidden2
+                + hidden2 + 4;
+        ByteBuffer out = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(boardSize).putInt(hidden).putInt(hidden2).putInt(outputScale);
+        for (short weight : featureWeights) {
+            out.putShort(weight);
+        }
+        for (short bias : featureBiases) {
+            out.putShort(bias);
+        }
+        out.put(hiddenWeights);
+        for (int bias : hiddenBiases) {
+            out.putInt(bias);
+        }
+        out.put(outputWeights);
+        out.putInt(outputBias);
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * @return a new accumulator for this network, set for an empty board
+     */
+    Accumulator newAccumulator() {
+        return new Accumulator(this);
+    }
+
+    /**
+     * Bring an accumulator up to date for a board, starting from another accumulator, by
+     * adding the weights of every feature the board has that the other one doesn't, and
+     * subtracting the ones it doesn't have anymore.  After one move that is only a handful
+     * of features, whatever the move was: a step, a multiple jump, or a crowning.  If the
+     * board has less in common with the other accumulator than with an empty board, it
+     * starts over from the biases instead.
+     *
+     * @param from  the accumulator to start from, which isn't changed unless it is to
+     * @param to    the accumulator to set, which may be the same as from
+     * @param board the position to set it for
+     */
+    void update(Accumulator from, Accumulator to, CheckersData board) {
+        long redMen = board.red & ~board.kings, redKings = board.red & board.kings;
+        long blackMen = board.black & ~board.kings, blackKings = board.black & board.kings;
+        long fromRedMen = from.red & ~from.kings, fromRedKings = from.red & from.kings;
+        long fromBlackMen = from.black & ~from.kings, fromBlackKings = from.black & from.kings;
+
+        int changed = Long.bitCount(redMen ^ fromRedMen) + Long.bitCount(redKings ^ fromRedKings)
+                + Long.bitCount(blackMen ^ fromBlackMen) + Long.bitCount(blackKings ^ fromBlackKings);
+        short[] values = to.values;
+        if (changed > Long.bitCount(board.red | board.black)) {
+            // starting from nothing is less work
+            System.arraycopy(featureBiases, 0, values, 0, hidden);
+            fromRedMen = fromRedKings = fromBlackMen = fromBlackKings = 0;
+        } else if (from != to) {
+            System.arraycopy(from.values, 0, values, 0, hidden);
+        }
+
+        apply(values, 0, fromRedMen, redMen);
+        apply(values, 64, fromRedKings, redKings);
+        apply(values, 128, fromBlackMen, blackMen);
+        apply(values, 192, fromBlackKings, blackKings);
+        to.red = board.red;
+        to.black = board.black;
+        to.kings = board.kings;
+    }
+
+    /**
+     * Add and subtract the weights of one kind of piece for the squares that changed.
+     */
+    private void apply(short[] values, int firstFeature, long before, long after) {
+        for (long added = after & ~before; added != 0; added &= added - 1) {
+            int weights = (firstFeature + Long.numberOfTrailingZeros(added)) * hidden;
+            for (int i = 0; i < hidden; i++) {
+                values[i] += featureWeights[weights + i];
+            }
+        }
+        for (long removed = before & ~after; removed != 0; removed &= removed - 1) {
+            int weights = (firstFeature + Long.numberOfTrailingZeros(removed)) * hidden;
+            for (int i = 0; i < hidden; i++) {
+                values[i] -= featureWeights[weights + i];
+            }
+        }
+    }
+
+    /**
+     * Run the layers above the accumulator.
+     *
+     * @return the score of the position the accumulator was last updated for, in centi-pieces
+     *         for red (see Score), and never as much as a win
+     */
+    int evaluate(Accumulator accumulator) {
+        short[] values = accumulator.values;
+        int[] sums = accumulator.sums;
+        System.arraycopy(hiddenBiases, 0, sums, 0, hidden2);
+
+        // a unit clamped to 0 adds nothing, and usually most of them are, so this goes through
+        // the first layer and only adds in the weights of the units that are on
+        for (int i = 0; i < hidden; i++) {
+            int activation = Math.min(values[i], ACTIVATION_MAX);
+            if (activation <= 0)
+                continue;
+            int weights = i * hidden2;
+            for (int j = 0; j < hidden2; j++) {
+                sums[j] += activation * hiddenWeights[weights + j];
+            }
+        }
+
+        int output = outputBias;
+        for (int j = 0; j < hidden2; j++) {
+            output += Math.min(Math.max(sums[j] >> SHIFT, 0), ACTIVATION_MAX) * outputWeights[j];
+        }
+        return Score.clamp((int) ((long) output * Score.PIECE / outputScale));
+    }
+
+    /**
+     * Make a network that works out the handcrafted evaluation's piece values (see
+     * AlphaBetaSearch.evaluate), rounded to 1/outputScale of a piece.
+     *
+     * Each first layer unit adds up the pieces of one color on one row, scaled so that a row
+     * full of kings still fits under the clamp.  Each of those is passed straight through a
+     * second layer unit, and the output adds up the red ones and subtracts the black ones.
+     */
+    static NnueNetwork handcrafted(int boardSize) {
+        BoardGeometry geometry = BoardGeometry.of(boardSize);
+        int[][] pieceValues = { // in centi-pieces
+                AlphaBetaSearch.pieceValues(geometry, CheckersData.RED),
+                AlphaBetaSearch.pieceValues(geometry, CheckersData.RED_KING),
+                AlphaBetaSearch.pieceValues(geometry, CheckersData.BLACK),
+                AlphaBetaSearch.pieceValues(geometry, CheckersData.RED_KING), // kings are worth the same either way
+        };
+
+        // the most one row can hold, which has to come out at most ACTIVATION_MAX
+        double fullestRow = 0;
+        for (long row : geometry.rows) {
+            double most = 0;
+            for (long squares = row; squares != 0; squares &= squares - 1) {
+                int bit = Long.numberOfTrailingZeros(squares);
+                most += (double) Math.max(pieceValues[0][bit], Math.max(pieceValues[1][bit], pieceValues[2][bit]))
+                        / Score.PIECE;
+            }
+            fullestRow = Math.max(fullestRow, most);
+        }
+        int scale = (int) (ACTIVATION_MAX / fullestRow);
+
+        int units = 2 * boardSize; // one per row and color
+        int hidden = 128, hidden2 = 32;
+        NnueNetwork network = new NnueNetwork(boardSize, hidden, hidden2, scale);
+        for (int plane = 0; plane < 4; plane++) {
+            int color = plane < 2 ? 0 : 1;
+            for (long squares = geometry.playable; squares != 0; squares &= squares - 1) {
+                int bit = Long.numberOfTrailingZeros(squares);
+                int unit = color * boardSize + geometry.rowOf(bit);
+                network.featureWeights[(plane * 64 + bit) * hidden + unit] =
+                        (short) Math.round((double) pieceValues[plane][bit] * scale / Score.PIECE);
+            }
+        }
+        for (int unit = 0; unit < units; unit++) {
+            network.hiddenWeights[unit * hidden2 + unit] = 1 << SHIFT;
+            network.outputWeights[unit] = (byte) (unit < boardSize ? 1 : -1);
+        }
+        return network;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: NnueNetwork network-file [board size]");
+            System.exit(1);
+        }
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : CheckersData.DEFAULT_SIZE;
+        handcrafted(boardSize).save(Paths.get(args[0]));
+    }
+}
@@ -0,0 +1,70 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * A batch of positions to be scored together by a BatchEvaluator.  The positions are
+ * kept as structure-of-arrays, one array per piece mask, so that the masks of many
+ * positions sit side by side in memory and a vector evaluator can load one lane per
+ * position straight out of them.
+ *
+ * Only the pieces are kept, not whose turn it is, since the evaluation doesn't care.
+ */
+public final class PositionBatch {
+
+    final int boardSize;
+    final long[] red;    // the CheckersData.red of each position
+    final long[] black;  // the CheckersData.black of each position
+    final long[] kings;  // the CheckersData.kings of each position
+    int count;           // how many positions are in the batch
+
+    /**
+     * @param boardSize the size of the boards that will be put in the batch
+     * @param capacity  the most positions the batch can hold
+     */
+    public PositionBatch(int boardSize, int capacity) {
+        BoardGeometry.of(boardSize); // throws if there is no such board
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+        this.boardSize = boardSize;
+        red = new long[capacity];
+        black = new long[capacity];
+        kings = new long[capacity];
+    }
+
+    /**
+     * Add a position to the end of the batch.
+     *
+     * @return the index of the position, which is where its score goes
+     */
+    public int add(CheckersData board) {
+        if (board.size() != boardSize)
+            throw new IllegalArgumentException("this batch is for " + boardSize + "x" + boardSize
+                    + " boards, not " + board.size() + "x" + board.size());
+        if (count == red.length)
+            throw new IllegalStateException("the batch is full");
+        red[count] = board.red;
+        black[count] = board.black;
+        kings[count] = board.kings;
+        return count++;
+    }
+
+    /**
+     * Empty the batch so it can be filled again.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return red.length;
+    }
+
+    public boolean isFull() {
+        return count == red.length;
+    }
+}
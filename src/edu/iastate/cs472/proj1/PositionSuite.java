@@ -0,0 +1,479 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author cswoods
+ *
+ * Runs an engine on a file of test positions with known best moves (shots, multi-jump
+ * combinations, endgame wins) and reports which it solved, and how long and how many
+ * nodes it took to find the move.  Saved results can be compared with a later run, so
+ * it can tell whether a change to the engine made it find more of them, or find them faster.
+ *
+ * Each line of a suite file is one position, with four fields separated by |:
+ *
+ *   name | board | side to move | best moves
+ *
+ * The board is its rows from the top down, separated by /, with one character per square:
+ * . for empty, r and b for red and black men, R and B for red and black kings.  The side
+ * to move is red or black.  The best moves are one or more turns separated by spaces, each
+ * the squares the piece goes through, like c3-d4 or c3-e5-g7 (columns are letters from the
+ * left, rows are numbers from the bottom, like CheckersData.toString).  A position counts
+ * as solved if the engine's turn starts with any of them, so a long jump only needs to be
+ * written out as far as the choice that matters.  Blank lines and lines starting with # are
+ * skipped.
+ *
+ * Every position is searched by an engine of its own thread with empty tables, under the
+ * same limits, time or nodes, see SearchLimits, for each hop of its turn that has more
+ * than one jump to choose from; a hop with only one is just made.  The time to solution is
+ * when the search found the move it played (see SearchStats.bestMoveNodes), added up over
+ * the hops it searched, or the whole turn for a MonteCarloSearch.
+ *
+ * Each worker's engine has a MemoryBudget of its own, of the same size, rather than a part
+ * of MemoryBudget.DEFAULT, so its tables are the same size however many workers there are.
+ * With that, node limits give the same results on any machine and any number of workers
+ * (for an AlphaBetaSearch, and a MonteCarloSearch on one thread), so they are what to
+ * compare with a baseline; times are only worth comparing with as many workers as there
+ * are idle cores.  --check makes sure of it, by running the suite on one worker as well
+ * and failing if anything but the times came out different.
+ *
+ * Usage: java edu.iastate.cs472.proj1.PositionSuite suite-file [--engine spec]
+ *        [--millis n | --nodes n] [--workers n] [--memory bytes] [--check]
+ *        [--save results-file] [--baseline results-file]
+ *
+ * where the engine is a spec like alphabeta:depth=64, see SelfPlayWorker.config, and the
+ * memory is for each worker, like 16m, which is the default.
+ */
+public final class PositionSuite {
+
+    static final long DEFAULT_MEMORY = 16 << 20; // for the tables of each worker's engine
+
+    /**
+     * One test position.
+     */
+    static final class Position {
+        final String name;
+        final CheckersData board;
+        final int player;
+        final List<String> bestMoves; // turns, like c3-e5-g7
+
+        Position(String name, CheckersData board, int player, List<String> bestMoves) {
+            this.name = name;
+            this.board = board;
+            this.player = player;
+            this.bestMoves = bestMoves;
+        }
+
+        /**
+         * @return true if the turn, like c3-e5-g7, starts with one of the best moves
+         */
+        boolean isSolvedBy(String turn) {
+            for (String best : bestMoves) {
+                if (turn.equals(best) || turn.startsWith(best + "-"))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * How an engine did on one position.
+     */
+    static final class Result {
+        final String name;
+        final boolean solved;
+        final String turn;         // the turn the engine played
+        final long nodes;          // for the whole turn
+        final long millis;
+        final long solutionNodes;  // until it found the move, if it solved it
+        final long solutionMillis;
+
+        Result(String name, boolean solved, String turn, long nodes, long millis, long solutionNodes,
+               long solutionMillis) {
+            this.name = name;
+            this.solved = solved;
+            this.turn = turn;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.solutionNodes = solutionNodes;
+            this.solutionMillis = solutionMillis;
+        }
+    }
+
+    /**
+     * The engine of one worker thread for one board size.  An AlphaBetaSearch has its own
+     * pool, so its tables can be cleared before every position.  Its budget is its own too,
+     * so the sizes of its tables don't depend on how many other solvers there are.
+     */
+    private static final class Solver {
+        final CheckersEngine engine;
+        final SearchContextPool pool; // null for a MonteCarloSearch
+
+        Solver(String spec, int boardSize, long memory) {
+            SearchConfig config = SelfPlayWorker.config(spec, boardSize).toBuilder()
+                    .memoryBudget(new MemoryBudget(memory))
+                    .build();
+            if (spec.startsWith("mcts")) {
+                engine = new MonteCarloSearch(config);
+                pool = null;
+            } else {
+                pool = new SearchContextPool(config, 1);
+                engine = new AlphaBetaSearch(pool);
+            }
+        }
+    }
+
+    private final String engine;
+    private final SearchLimits limits;
+    private final int workers;
+    private final long memory;
+    private final ThreadLocal<Map<Integer, Solver>> solvers = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @param engine  the spec of the engine to test, see SelfPlayWorker.config
+     * @param limits  how long the engine may search each position
+     * @param workers how many positions to search at once
+     * @param memory  how many bytes of tables each worker's engine gets
+     */
+    public PositionSuite(String engine, SearchLimits limits, int workers, long memory) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers must be at least 1, was " + workers);
+        SelfPlayWorker.config(engine, CheckersData.DEFAULT_SIZE); // throws if the spec is no good
+        this.engine = engine;
+        this.limits = limits;
+        this.workers = workers;
+        this.memory = memory;
+    }
+
+    public PositionSuite(String engine, SearchLimits limits, int workers) {
+        this(engine, limits, workers, DEFAULT_MEMORY);
+    }
+
+    /**
+     * Read a suite file, see the class comment.
+     *
+     * @throws IllegalArgumentException if a line isn't a position, saying which
+     */
+    static List<Position> load(Path file) throws IOException {
+        List<Position> positions = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            try {
+                positions.add(parse(line));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file + " line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return positions;
+    }
+
+    private static Position parse(String line) {
+        String[] fields = line.split("\\|");
+        if (fields.length != 4)
+            throw new IllegalArgumentException("need name | board | side | best moves, got " + fields.length + " fields");
+        String[] rows = fields[1].trim().split("/");
+        CheckersData board = new CheckersData(rows.length); // throws if there is no board of that size
+        board.clearBoard();
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row].length() != rows.length)
+                throw new IllegalArgumentException("row " + (row + 1) + " should have " + rows.length + " squares");
+            for (int col = 0; col < rows.length; col++) {
+                int piece = ".rRbB".indexOf(rows[row].charAt(col));
+                if (piece < 0)
+                    throw new IllegalArgumentException("no such piece: " + rows[row].charAt(col));
+                if (piece != CheckersData.EMPTY)
+                    board.putPiece(row, col, piece); // the characters are in the order of the constants
+            }
+        }
+        String side = fields[2].trim();
+        if (!side.equals("red") && !side.equals("black"))
+            throw new IllegalArgumentException("the side to move is red or black, not " + side);
+        int player = side.equals("red") ? CheckersData.RED : CheckersData.BLACK;
+        List<String> bestMoves = Arrays.asList(fields[3].trim().split("\\s+"));
+        CheckersMove[] legalMoves = board.getLegalMoves(player);
+        for (String best : bestMoves) {
+            String[] squares = best.split("-");
+            if (squares.length < 2)
+                throw new IllegalArgumentException(best + " isn't a move, which looks like c3-d4");
+            String first = squares[0] + "-" + squares[1];
+            if (legalMoves == null || Arrays.stream(legalMoves).noneMatch(move -> hop(board, move).equals(first)))
+                throw new IllegalArgumentException(best + " isn't a legal move");
+        }
+        return new Position(fields[0].trim(), board, player, bestMoves);
+    }
+
+    /**
+     * @return the name of a square, like c3
+     */
+    static String square(CheckersData board, int row, int col) {
+        return (char) ('a' + col) + Integer.toString(board.size() - row);
+    }
+
+    private static String hop(CheckersData board, CheckersMove move) {
+        return square(board, move.fromRow, move.fromCol) + "-" + square(board, move.toRow, move.toCol);
+    }
+
+    /**
+     * Search every position, a few at a time, and wait for them all.
+     *
+     * @param progress where to print each result as it comes in, or null
+     * @return the results, in the same order as the positions
+     */
+    public List<Result> run(List<Position> positions, PrintStream progress) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Position position : positions) {
+                futures.add(pool.submit(() -> solve(position)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    Result result = future.get();
+                    results.add(result);
+                    if (progress != null)
+                        progress.println(format(result));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("the engine failed on a position", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Play one turn from the position, jumps and all, and see if it was a best move.
+     */
+    private Result solve(Position position) {
+        CheckersData board = new CheckersData(position.board);
+        Solver solver = solvers.get().computeIfAbsent(board.size(), size -> new Solver(engine, size, memory));
+        if (solver.pool != null)
+            solver.pool.clear();
+
+        long start = System.nanoTime();
+        SearchStats stats = new SearchStats(); // for every search of the turn, one per hop
+        CheckersMove[] legalMoves = board.getLegalMoves(position.player);
+        CheckersMove move = solver.engine.chooseMove(board, position.player, null, legalMoves, stats, limits);
+        StringBuilder turn = new StringBuilder(hop(board, move));
+        boolean crowned = board.makeMove(move);
+        while (!crowned && move.isJump()) {
+            CheckersMove[] jumps = board.getLegalJumpsFrom(position.player, move.toRow, move.toCol);
+            if (jumps == null)
+                break;
+            // a hop with only one jump is no choice, so it isn't searched and costs no nodes or time
+            move = jumps.length == 1 ? jumps[0]
+                    : solver.engine.chooseMove(board, position.player, null, jumps, stats, limits);
+            turn.append('-').append(square(board, move.toRow, move.toCol));
+            crowned = board.makeMove(move);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        boolean solved = position.isSolvedBy(turn.toString());
+        // the choice that matters can be at any hop of a jump, so the time to solution is when
+        // every hop's search found its move, added up.  a MonteCarloSearch doesn't know when it
+        // found a move, so for it that's the whole turn
+        boolean known = stats.bestMoveNanos > 0;
+        long solutionNodes = !solved ? 0 : known ? stats.bestMoveNodes : stats.nodes;
+        long solutionMillis = !solved ? 0 : known ? stats.bestMoveNanos / 1_000_000 : millis;
+        return new Result(position.name, solved, turn.toString(), stats.nodes, millis, solutionNodes, solutionMillis);
+    }
+
+    private static String format(Result result) {
+        if (!result.solved)
+            return String.format("%-24s FAILED  played %-14s %12d nodes %8d ms", result.name, result.turn,
+                    result.nodes, result.millis);
+        return String.format("%-24s solved  played %-14s %12d nodes %8d ms to solution", result.name, result.turn,
+                result.solutionNodes, result.solutionMillis);
+    }
+
+    /**
+     * Print how many were solved and the totals, and how that compares with a baseline.
+     *
+     * @param baseline the results of an earlier run, see load, or null
+     */
+    static void report(List<Result> results, List<Result> baseline, PrintStream out) {
+        int solved = 0;
+        long nodes = 0, millis = 0;
+        for (Result result : results) {
+            if (result.solved)
+                solved++;
+            nodes += result.nodes;
+            millis += result.millis;
+        }
+        out.printf("solved %d of %d, %d nodes, %d ms in all%n", solved, results.size(), nodes, millis);
+        if (baseline == null)
+            return;
+
+        Map<String, Result> before = new HashMap<>();
+        for (Result result : baseline) {
+            before.put(result.name, result);
+        }
+        int baseSolved = 0, gained = 0, lost = 0, both = 0;
+        double logNodes = 0, logMillis = 0; // ratios to the baseline, for the geometric mean
+        for (Result result : results) {
+            Result old = before.get(result.name);
+            if (old == null) {
+                out.printf("  %-24s not in the baseline%n", result.name);
+                continue;
+            }
+            if (old.solved)
+                baseSolved++;
+            if (result.solved && !old.solved) {
+                gained++;
+                out.printf("  %-24s now solved%n", result.name);
+            } else if (!result.solved && old.solved) {
+                lost++;
+                out.printf("  %-24s NO LONGER SOLVED, played %s%n", result.name, result.turn);
+            } else if (result.solved) {
+                both++;
+                // +1 so a position solved at once doesn't divide by 0
+                logNodes += Math.log((result.solutionNodes + 1.0) / (old.solutionNodes + 1.0));
+                logMillis += Math.log((result.solutionMillis + 1.0) / (old.solutionMillis + 1.0));
+            }
+        }
+        out.printf("baseline solved %d: %d gained, %d lost%n", baseSolved, gained, lost);
+        if (both > 0) {
+            out.printf("on the %d solved by both: %.2fx the nodes and %.2fx the time to solution%n", both,
+                    Math.exp(logNodes / both), Math.exp(logMillis / both));
+        }
+    }
+
+    /**
+     * @return the names of the positions whose results aren't the same in both runs, going by
+     *         everything but the times, which are never the same twice
+     */
+    static List<String> differences(List<Result> results, List<Result> others) {
+        List<String> different = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            Result a = results.get(i);
+            Result b = others.get(i);
+            if (a.solved != b.solved || !a.turn.equals(b.turn) || a.nodes != b.nodes
+                    || a.solutionNodes != b.solutionNodes)
+                different.add(a.name);
+        }
+        return different;
+    }
+
+    /**
+     * Write results to a file, one tab-separated line per position, to compare with later.
+     */
+    static void save(List<Result> results, Path file, String description) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("# " + description);
+            out.println("# name\tsolved\tturn\tnodes\tmillis\tsolution nodes\tsolution millis");
+            for (Result r : results) {
+                out.println(r.name + "\t" + r.solved + "\t" + r.turn + "\t" + r.nodes + "\t" + r.millis + "\t"
+                        + r.solutionNodes + "\t" + r.solutionMillis);
+            }
+        }
+    }
+
+    /**
+     * Read results written by save.
+     */
+    static List<Result> loadResults(Path file) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] f = line.split("\t");
+            if (f.length != 7)
+                throw new IllegalArgumentException(file + " isn't a results file: " + line);
+            results.add(new Result(f[0], Boolean.parseBoolean(f[1]), f[2], Long.parseLong(f[3]), Long.parseLong(f[4]),
+                    Long.parseLong(f[5]), Long.parseLong(f[6])));
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String engine = "alphabeta:depth=64";
+        SearchLimits limits = new SearchLimits(1000, 1000);
+        int workers = Runtime.getRuntime().availableProcessors();
+        long memory = DEFAULT_MEMORY;
+        boolean check = false;
+        Path save = null, baseline = null, suite = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--engine":
+                        engine = args[++i];
+                        break;
+                    case "--millis":
+                        long millis = Long.parseLong(args[++i]);
+                        limits = new SearchLimits(millis, millis);
+                        break;
+                    case "--nodes":
+                        limits = SearchLimits.ofNodes(Long.parseLong(args[++i]));
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--memory":
+                        memory = MemoryBudget.parseBytes(args[++i]);
+                        break;
+                    case "--check":
+                        check = true;
+                        break;
+                    case "--save":
+                        save = Paths.get(args[++i]);
+                        break;
+                    case "--baseline":
+                        baseline = Paths.get(args[++i]);
+                        break;
+                    default:
+                        if (suite != null)
+                            throw new IllegalArgumentException("two suite files");
+                        suite = Paths.get(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            suite = null; // so the usage is printed
+        }
+        if (suite == null) {
+            System.err.println("usage: PositionSuite suite-file [--engine spec] [--millis n | --nodes n] "
+                    + "[--workers n] [--memory bytes] [--check] [--save results-file] [--baseline results-file]");
+            System.exit(1);
+        }
+        if (check && limits.isTimed()) {
+            System.err.println("--check needs --nodes, since timed searches never come out the same twice");
+            System.exit(1);
+        }
+
+        List<Position> positions = load(suite);
+        List<Result> results = new PositionSuite(engine, limits, workers, memory).run(positions, System.out);
+        System.out.println();
+        report(results, baseline == null ? null : loadResults(baseline), System.out);
+        if (save != null)
+            save(results, save, engine + ", " + limits + ", " + workers + " workers, " + memory + " bytes each, "
+                    + suite);
+        if (check) {
+            List<Result> alone = new PositionSuite(engine, limits, 1, memory).run(positions, null);
+            List<String> different = differences(results, alone);
+            if (!different.isEmpty()) {
+                System.out.println("CHECK FAILED, different on 1 worker than on " + workers + ": " + different);
+                System.exit(1);
+            }
+            System.out.println("check: the same results on 1 worker as on " + workers);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * @author cswoods
+ *
+ * Settles whether a position is a forced win, using depth-first proof-number search
+ * (df-pn).  AlphaBetaSearch gives a score to a fixed depth, which can't say for sure that
+ * a side wins; this searches until it has proven a win for one side, however long it
+ * takes, or it runs out of budget.
+ *
+ * Proof-number search looks at the game as an AND/OR tree from the attacker's side: the
+ * attacker needs one move that wins, and then a win against every defense.  Every node has
+ * a proof number, how many more leaves at least would have to be proven wins to prove it,
+ * and a disproof number, the same for disproving it.  The search always expands the node
+ * that is cheapest to settle, so it goes straight down forcing lines and leaves alone
+ * whatever it doesn't have to look at.  Depth-first proof-number search gets the same
+ * order without keeping the tree in memory, by only going back up when a node's numbers
+ * pass a threshold, and keeping the numbers in a table.
+ *
+ * The rules are the ones the game uses: captures are mandatory and a jumping piece keeps
+ * jumping (the moves come from getLegalMoveBits, with the same masks as getLegalMoves), a
+ * player with no moves loses, and a position that repeats or goes config.noProgressPlies()
+ * plies without a capture or a man moving is a draw, which is not a win for the attacker.
+ *
+ * A proof is always sound.  Repetitions depend on the path, so a disproof might not be,
+ * which only means a win can be missed; that's why nothing is claimed for a position that
+ * isn't proven either way.  Proofs are only reused in the table when there are at least as
+ * many plies left before the no-progress draw as when they were found.
+ *
+ * The node budget is config.solverNodes().  The table is its whole memory, and is sized
+ * from the config's MemoryBudget unless config.solverTableEntries() is set; it is made again
+ * at the start of a solve if its share of the budget changed since the last one.
+ */
+public class ProofNumberSearch {
+
+    private static final int INFINITY = 1 << 30;
+    private static final int MAX_PLIES = 1000; // a line this long is given up on, as not a win
+    private static final long FIRST_BUDGET = 10_000; // the nodes for the first try at each side, see solve
+
+    // keys for the piece that has to keep jumping, so a position in the middle of a jumping
+    // spree isn't mixed up with the same pieces at the start of a turn
+    private static final long[] JUMP_KEYS = new long[64];
+    static {
+        SplittableRandom random = new SplittableRandom(0x0DF9_0A57_C0DEL);
+        for (int i = 0; i < JUMP_KEYS.length; i++) {
+            JUMP_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private final SearchConfig config;
+    private Table table;
+    private final MemoryBudget.Share tableShare; // how big the table should be
+    private final List<Ply> plies = new ArrayList<>();
+    private final GameHistory path = new GameHistory(256);
+
+    // the proof running now
+    private int attacker;
+    private long nodes;
+    private long maxNodes;
+    private boolean exhausted; // the node budget ran out, so everything is unwinding
+    private int lastProof, lastDisproof; // what the last call to mid() worked out for its node
+    private boolean lastOnPath;          // and whether that's a disproof that depends on the path to it
+
+    /**
+     * The scratch space for one ply: the board, and the moves of the node there with the
+     * proof and disproof numbers of the positions they lead to.
+     */
+    private final class Ply {
+        final CheckersData board = new CheckersData(config.boardSize());
+        final int[] moves = new int[4 * 64];
+        final long[] keys = new long[moves.length];
+        final int[] players = new int[moves.length];   // whose turn it is after each move
+        final int[] jumpFroms = new int[moves.length]; // the piece that has to keep jumping after it, or -1
+        final boolean[] progress = new boolean[moves.length];
+        final int[] proof = new int[moves.length];
+        final int[] disproof = new int[moves.length];
+        final boolean[] onPath = new boolean[moves.length]; // the disproof only holds on this path, see mid
+    }
+
+    public ProofNumberSearch() {
+        this(SearchConfig.DEFAULT);
+    }
+
+    public ProofNumberSearch(SearchConfig config) {
+        this.config = config;
+        this.tableShare = config.memoryBudget().share(this, "proof number table", 4, Table.BYTES_PER_ENTRY,
+                Table.MAX_ENTRIES, config.solverTableEntries());
+        this.table = new Table(tableShare.entries());
+        tableShare.using((long) table.capacity() * Table.BYTES_PER_ENTRY);
+    }
+
+    public SearchConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Find out whether the player to move has a forced win or a forced loss.
+     *
+     * Showing that a side can't win (when it can't) can take far longer than proving the
+     * other side's win, since every line of a draw has to be followed until it repeats.  So
+     * rather than one side and then the other, it takes turns trying each side with a budget
+     * that doubles every round, until one is proven, both are disproven, or the budget
+     * (config.solverNodes() in all) is gone.  Each try starts over, which at most doubles the
+     * work.
+     *
+     * @param board   the position, which is not modified
+     * @param player  the player to move, RED or BLACK
+     * @param history the game so far, for repetitions and the no-progress rule, or null
+     */
+    public synchronized ProofResult solve(CheckersData board, int player, GameHistory history) {
+        if (board.size() != config.boardSize())
+            throw new IllegalArgumentException("this search is for " + config.boardSize() + "x" + config.boardSize()
+                    + " boards, not " + board.size() + "x" + board.size());
+        if (table.capacity() != Table.sizeFor(tableShare.entries())) {
+            table = null; // so the old one can go before the new one is made
+            table = new Table(tableShare.entries());
+            tableShare.using((long) table.capacity() * Table.BYTES_PER_ENTRY);
+        }
+        nodes = 0;
+        int opponent = player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED;
+        boolean winDisproven = false, lossDisproven = false;
+
+        for (long budget = FIRST_BUDGET; nodes < config.solverNodes(); budget *= 2) {
+            if (!winDisproven) {
+                maxNodes = Math.min(nodes + budget, config.solverNodes());
+                prove(board, player, history, player);
+                if (lastProof == 0)
+                    return new ProofResult(ProofResult.Outcome.WIN, line(board, player, history), nodes);
+                winDisproven = lastDisproof == 0;
+            }
+            if (!lossDisproven && nodes < config.solverNodes()) {
+                maxNodes = Math.min(nodes + budget, config.solverNodes());
+                prove(board, player, history, opponent);
+                if (lastProof == 0)
+                    return new ProofResult(ProofResult.Outcome.LOSS, line(board, player, history), nodes);
+                lossDisproven = lastDisproof == 0;
+            }
+            if (winDisproven && lossDisproven)
+                break; // neither side can force a win
+        }
+        return new ProofResult(ProofResult.Outcome.UNKNOWN, new ArrayList<>(), nodes);
+    }
+
+    /**
+     * Run df-pn from the root until it's proven or disproven that attacker wins, or the
+     * node count gets to maxNodes.  The root's numbers are left in lastProof and lastDisproof.
+     */
+    private void prove(CheckersData board, int player, GameHistory history, int attacker) {
+        this.attacker = attacker;
+        exhausted = false;
+        table.clear();
+        resetPath(history, board, player);
+        ply(0).board.copyFrom(board);
+        mid(0, key(board, player, -1), player, -1, INFINITY, INFINITY);
+    }
+
+    private void resetPath(GameHistory history, CheckersData board, int player) {
+        path.clear();
+        if (history != null)
+            path.copyFrom(history);
+        else
+            path.push(board.hash(player), true);
+    }
+
+    private Ply ply(int index) {
+        while (plies.size() <= index) {
+            plies.add(new Ply());
+        }
+        return plies.get(index);
+    }
+
+    private static long key(CheckersData board, int player, int jumpFrom) {
+        return board.hash(player) ^ (jumpFrom >= 0 ? JUMP_KEYS[jumpFrom] : 0);
+    }
+
+    /**
+     * Search the node on plies[index] until its proof number reaches proofLimit or its
+     * disproof number reaches disproofLimit, which is when it is no longer the cheapest
+     * way to settle its parent.  The node's numbers are left in lastProof and lastDisproof.
+     *
+     * A draw by repetition only happens on the path that repeats, so a disproof that rests on
+     * one is kept out of the table, or it would disprove the same position reached another
+     * way, where there is no repetition and the attacker might well win.  Nodes carry that up
+     * in lastOnPath: an OR node is disproven on the path if any of its moves are, and an AND
+     * node only if every disproven move is.
+     */
+    private void mid(int index, long key, int player, int jumpFrom, int proofLimit, int disproofLimit) {
+        nodes++;
+        Ply ply = ply(index);
+        CheckersData board = ply.board;
+        boolean or = player == attacker;
+        int quietPlies = path.quietPlies();
+
+        // a draw is as good as a loss to the attacker
+        if (index > 0 && jumpFrom < 0 && (path.repetitions() > 1 || quietPlies >= config.noProgressPlies())
+                || index >= MAX_PLIES) {
+            // it's a draw whatever the path for the no-progress rule, since the count is part of
+            // the table entry, but not for a repetition
+            setLast(INFINITY, 0, quietPlies < config.noProgressPlies());
+            return;
+        }
+
+        int count = board.getLegalMoveBits(player, jumpFrom, ply.moves);
+        if (count == 0) {
+            // whoever has to move has lost
+            if (or)
+                setLast(INFINITY, 0, false);
+            else
+                setLast(0, INFINITY, false);
+            table.store(key, lastProof, lastDisproof, quietPlies, 1);
+            return;
+        }
+
+        // where each move goes, and what the table knows about it already.  A position that
+        // isn't in the table starts out by how many moves it has, since the side with fewer
+        // choices is the easier one to pin down, and with none it's already lost
+        CheckersData scratch = ply(index + 1).board;
+        int[] childMoves = ply(index + 1).moves;
+        for (int i = 0; i < count; i++) {
+            int move = ply.moves[i];
+            int to = CheckersData.moveTo(move);
+            boolean isJump = board.isJumpBits(move);
+            scratch.copyFrom(board);
+            ply.progress[i] = isJump || (board.kings & (1L << CheckersData.moveFrom(move))) == 0;
+            boolean crowned = scratch.makeMove(CheckersData.moveFrom(move), to, isJump);
+            if (isJump && !crowned && scratch.getLegalMoveBits(player, to, childMoves) > 0) {
+                ply.players[i] = player; // the same piece has to keep jumping
+                ply.jumpFroms[i] = to;
+            } else {
+                ply.players[i] = player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED;
+                ply.jumpFroms[i] = -1;
+            }
+            ply.keys[i] = key(scratch, ply.players[i], ply.jumpFroms[i]);
+            int childQuiet = ply.jumpFroms[i] >= 0 || ply.progress[i] ? 0 : quietPlies + 1;
+            ply.onPath[i] = false;
+            if (ply.jumpFroms[i] < 0 && isDraw(scratch.hash(ply.players[i]), ply.progress[i])) {
+                // a draw is spotted here rather than when the move is searched, because it isn't in
+                // the table: the first guess would say it's worth looking at every time we came back
+                ply.proof[i] = INFINITY;
+                ply.disproof[i] = 0;
+                ply.onPath[i] = childQuiet < config.noProgressPlies();
+            } else if (table.probe(ply.keys[i], childQuiet)) {
+                ply.proof[i] = table.proof;
+                ply.disproof[i] = table.disproof;
+            } else {
+                int moves = scratch.getLegalMoveBits(ply.players[i], ply.jumpFroms[i], childMoves);
+                boolean childOr = ply.players[i] == attacker;
+                if (moves == 0) {
+                    ply.proof[i] = childOr ? INFINITY : 0;
+                    ply.disproof[i] = childOr ? 0 : INFINITY;
+                } else {
+                    ply.proof[i] = childOr ? 1 : moves;
+                    ply.disproof[i] = childOr ? moves : 1;
+                }
+            }
+        }
+
+        long started = nodes;
+        int proof, disproof;
+        while (true) {
+            // at an OR node one move has to win, and at an AND node every one of them
+            int best = 0;
+            int second = INFINITY; // the second smallest of the numbers we choose by
+            if (or) {
+                proof = INFINITY;
+                disproof = 0;
+                for (int i = 0; i < count; i++) {
+                    disproof = add(disproof, ply.disproof[i]);
+                    if (ply.proof[i] < proof) {
+                        second = proof;
+                        proof = ply.proof[i];
+                        best = i;
+                    } else if (ply.proof[i] < second) {
+                        second = ply.proof[i];
+                    }
+                }
+            } else {
+                disproof = INFINITY;
+                proof = 0;
+                for (int i = 0; i < count; i++) {
+                    proof = add(proof, ply.proof[i]);
+                    if (ply.disproof[i] < disproof) {
+                        second = disproof;
+                        disproof = ply.disproof[i];
+                        best = i;
+                    } else if (ply.disproof[i] < second) {
+                        second = ply.disproof[i];
+                    }
+                }
+            }
+            if (proof >= proofLimit || disproof >= disproofLimit || exhausted)
+                break;
+            if (nodes >= maxNodes) {
+                exhausted = true;
+                break;
+            }
+
+            // go down the cheapest move, for as long as it stays cheaper than the next one
+            int childProofLimit, childDisproofLimit;
+            if (or) {
+                childProofLimit = Math.min(proofLimit, wider(second));
+                childDisproofLimit = disproofLimit - disproof + ply.disproof[best];
+            } else {
+                childProofLimit = proofLimit - proof + ply.proof[best];
+                childDisproofLimit = Math.min(disproofLimit, wider(second));
+            }
+
+            int move = ply.moves[best];
+            CheckersData child = ply(index + 1).board;
+            child.copyFrom(board);
+            child.makeMove(CheckersData.moveFrom(move), CheckersData.moveTo(move), board.isJumpBits(move));
+            boolean turnOver = ply.jumpFroms[best] < 0;
+            if (turnOver)
+                path.push(child.hash(ply.players[best]), ply.progress[best]);
+            mid(index + 1, ply.keys[best], ply.players[best], ply.jumpFroms[best], childProofLimit, childDisproofLimit);
+            if (turnOver)
+                path.pop();
+            ply.proof[best] = lastProof;
+            ply.disproof[best] = lastDisproof;
+            ply.onPath[best] = lastOnPath;
+        }
+
+        boolean onPath = false;
+        if (disproof == 0) {
+            onPath = !or;
+            for (int i = 0; i < count; i++) {
+                if (ply.disproof[i] == 0) {
+                    if (or && ply.onPath[i]) {
+                        onPath = true;
+                        break;
+                    } else if (!or && !ply.onPath[i]) {
+                        onPath = false;
+                        break;
+                    }
+                }
+            }
+        }
+        if (!onPath)
+            table.store(key, proof, disproof, quietPlies, nodes - started + 1);
+        setLast(proof, disproof, onPath);
+    }
+
+    /**
+     * Add up proof or disproof numbers.  The sum is only INFINITY, which means solved, if one
+     * of them is.  Transpositions get counted once for every way to reach them, so big sums
+     * come up without anything being solved, and those stop just short of it.
+     */
+    private static int add(int a, int b) {
+        if (a == INFINITY || b == INFINITY)
+            return INFINITY;
+        return (int) Math.min((long) a + b, INFINITY - 1);
+    }
+
+    /**
+     * The threshold for going down the best move, given the number of the second best.
+     * Stopping as soon as the best move stops being the best (at second + 1) makes the
+     * search jump back and forth between two moves that are almost as good, so it keeps
+     * going until the best is a quarter worse than the second (the "1 + epsilon trick").
+     */
+    private static int wider(int second) {
+        return second >= INFINITY ? INFINITY : Math.max(second + 1, second + (second >> 2));
+    }
+
+    /**
+     * @return true if the turn that ends in the position with the given hash makes the game a draw
+     */
+    private boolean isDraw(long hash, boolean progress) {
+        path.push(hash, progress);
+        boolean draw = path.repetitions() > 1 || path.quietPlies() >= config.noProgressPlies();
+        path.pop();
+        return draw;
+    }
+
+    private void setLast(int proof, int disproof, boolean onPath) {
+        lastProof = proof;
+        lastDisproof = disproof;
+        lastOnPath = onPath;
+    }
+
+    /**
+     * Follow the proof the last call to prove() found through the table: the attacker's
+     * proven move, and the defense that took the most work to beat.
+     */
+    private List<CheckersMove> line(CheckersData start, int player, GameHistory history) {
+        List<CheckersMove> line = new ArrayList<>();
+        BoardGeometry geometry = start.geometry;
+        CheckersData board = new CheckersData(start);
+        CheckersData scratch = new CheckersData(start);
+        int[] moves = new int[4 * 64];
+        int[] continuations = new int[4 * 64];
+        int jumpFrom = -1;
+        int quietPlies = history == null ? 0 : history.quietPlies();
+
+        while (line.size() < MAX_PLIES) {
+            int count = board.getLegalMoveBits(player, jumpFrom, moves);
+            int chosen = -1;
+            long chosenWork = 0;
+            boolean chosenKeepsJumping = false;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                int to = CheckersData.moveTo(move);
+                boolean isJump = board.isJumpBits(move);
+                scratch.copyFrom(board);
+                boolean crowned = scratch.makeMove(CheckersData.moveFrom(move), to, isJump);
+                boolean keepsJumping = isJump && !crowned && scratch.getLegalMoveBits(player, to, continuations) > 0;
+                int next = keepsJumping ? player : (player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED);
+                int quiet = keepsJumping || isJump || (board.kings & (1L << CheckersData.moveFrom(move))) == 0
+                        ? 0 : quietPlies + 1;
+                long work;
+                if (next != attacker && scratch.getLegalMoveBits(next, -1, continuations) == 0) {
+                    work = 0; // the defender is stuck, which mid() proves without ever storing it
+                } else if (table.probe(key(scratch, next, keepsJumping ? to : -1), quiet) && table.proof == 0) {
+                    work = table.work;
+                } else {
+                    continue;
+                }
+                // the quickest win for the attacker, and the longest defense for the defender
+                boolean better = chosen < 0 || (player == attacker ? work < chosenWork : work > chosenWork);
+                if (better) {
+                    chosen = move;
+                    chosenWork = work;
+                    chosenKeepsJumping = keepsJumping;
+                }
+            }
+            if (chosen < 0)
+                break; // the game is over, or the rest of the proof didn't fit in the table
+
+            int from = CheckersData.moveFrom(chosen);
+            int to = CheckersData.moveTo(chosen);
+            boolean isJump = board.isJumpBits(chosen);
+            quietPlies = isJump || (board.kings & (1L << from)) == 0 ? 0 : quietPlies + 1;
+            line.add(new CheckersMove(geometry.rowOf(from), geometry.colOf(from), geometry.rowOf(to), geometry.colOf(to)));
+            board.makeMove(from, to, isJump);
+            if (chosenKeepsJumping) {
+                jumpFrom = to;
+            } else {
+                jumpFrom = -1;
+                player = player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * The proof and disproof numbers of the positions searched so far, in buckets of two
+     * like TranspositionTable.  When both entries of a bucket are taken, the one that took
+     * less work to find is replaced, since it's the cheaper one to find again.
+     */
+    private static final class Table {
+        // a key and a work, and a proof, disproof and quiet count
+        static final int BYTES_PER_ENTRY = 2 * Long.BYTES + 3 * Integer.BYTES;
+        static final int MAX_ENTRIES = 1 << 30; // the biggest power of two an array can have
+
+        private final long[] keys;
+        private final int[] proofs;
+        private final int[] disproofs;
+        private final int[] quietPlies; // the no-progress count of the position when it was searched
+        private final long[] works;     // how many nodes it took
+        private final int mask;
+
+        // what the last probe found
+        int proof, disproof;
+        long work;
+
+        Table(int entries) {
+            int size = sizeFor(entries);
+            keys = new long[size];
+            proofs = new int[size];
+            disproofs = new int[size];
+            quietPlies = new int[size];
+            works = new long[size];
+            mask = size / 2 - 1;
+        }
+
+        static int sizeFor(int entries) {
+            return Math.max(2, Integer.highestOneBit(Math.max(entries, 2)));
+        }
+
+        void clear() {
+            Arrays.fill(works, 0); // an entry with no work is empty
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        /**
+         * Look up a position.  A proof only counts if it was found with at least as many
+         * plies to go before the no-progress draw, and a disproof only if it was found with
+         * at most as many, since more time can only help the attacker.
+         *
+         * @param quiet the no-progress count of the position now
+         * @return true if it was found and can be used
+         */
+        boolean probe(long key, int quiet) {
+            int bucket = ((int) key & mask) * 2;
+            for (int slot = bucket; slot < bucket + 2; slot++) {
+                if (works[slot] == 0 || keys[slot] != key)
+                    continue;
+                if (proofs[slot] == 0 && quiet > quietPlies[slot])
+                    return false;
+                if (disproofs[slot] == 0 && quiet < quietPlies[slot])
+                    return false;
+                proof = proofs[slot];
+                disproof = disproofs[slot];
+                work = works[slot];
+                return true;
+            }
+            return false;
+        }
+
+        void store(long key, int proof, int disproof, int quiet, long work) {
+            int bucket = ((int) key & mask) * 2;
+            int slot;
+            if (works[bucket] == 0 || keys[bucket] == key)
+                slot = bucket;
+            else if (works[bucket + 1] == 0 || keys[bucket + 1] == key)
+                slot = bucket + 1;
+            else
+                slot = works[bucket] <= works[bucket + 1] ? bucket : bucket + 1;
+            keys[slot] = key;
+            proofs[slot] = proof;
+            disproofs[slot] = disproof;
+            quietPlies[slot] = quiet;
+            works[slot] = Math.max(work, 1);
+        }
+    }
+}
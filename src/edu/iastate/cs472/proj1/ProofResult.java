@@ -0,0 +1,60 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author cswoods
+ *
+ * What ProofNumberSearch.solve found out about a position: whether the player to move has
+ * a forced win, a forced loss, or neither as far as it could tell, and if it is proven,
+ * the line that shows it.
+ */
+public final class ProofResult {
+
+    public enum Outcome {
+        WIN,    // the player to move wins however the other player defends
+        LOSS,   // the other player wins however the player to move defends
+        UNKNOWN // neither was proven, because there isn't a forced win (so it's a draw), or the budget ran out first
+    }
+
+    private final Outcome outcome;
+    private final List<CheckersMove> line;
+    private final long nodes;
+
+    ProofResult(Outcome outcome, List<CheckersMove> line, long nodes) {
+        this.outcome = outcome;
+        this.line = Collections.unmodifiableList(line);
+        this.nodes = nodes;
+    }
+
+    public Outcome outcome() {
+        return outcome;
+    }
+
+    /**
+     * @return the proof line: the winning side's moves, against the defense that held out
+     *         the longest, up to the end of the game (or as far as the proof is still in the
+     *         table).  Each hop of a multiple jump is its own move.  Empty if nothing was proven.
+     */
+    public List<CheckersMove> line() {
+        return line;
+    }
+
+    /**
+     * @return how many nodes the search expanded
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(outcome).append(" (").append(nodes).append(" nodes)");
+        for (CheckersMove m : line) {
+            sb.append(' ').append(m);
+        }
+        return sb.toString();
+    }
+}
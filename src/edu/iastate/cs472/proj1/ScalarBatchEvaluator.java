@@ -0,0 +1,28 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * The BatchEvaluator to fall back on when the Vector API isn't available.  It just runs
+ * the normal evaluation on each position in turn.
+ */
+final class ScalarBatchEvaluator extends BatchEvaluator {
+
+    ScalarBatchEvaluator(BoardGeometry geometry, int[] redManValues, int[] blackManValues, int[] kingValues) {
+        super(geometry, redManValues, blackManValues, kingValues);
+    }
+
+    @Override
+    public void evaluate(PositionBatch batch, int[] scores) {
+        checkArguments(batch, scores);
+        for (int i = 0; i < batch.count; i++) {
+            scores[i] = AlphaBetaSearch.evaluate(batch.red[i], batch.black[i], batch.kings[i],
+                    redManValues, blackManValues, kingValues);
+        }
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return false;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * The scores AlphaBetaSearch works with.  A score is an int in centi-pieces (a man in the
+ * middle of the board is worth 100), positive good for RED and negative good for BLACK.
+ *
+ * A position where one side has no pieces or no moves left isn't scored on material.  It
+ * is a win, worth WIN minus the number of plies from the root it took to get there, so a
+ * quicker win scores higher and a slower loss scores higher for the loser, and the search
+ * goes for the quickest win and holds out the longest when it is losing.  Anything within
+ * MAX_PLIES of WIN is a win; evaluations are kept under that.
+ *
+ * Every score fits in a short, so the transposition table only needs 16 bits for one.
+ */
+final class Score {
+
+    static final int PIECE = 100;        // one man, in the units of a score
+    static final int WIN = 30000;        // winning right at the root, which can't happen
+    static final int MAX_PLIES = 1000;   // more than any search goes, so WIN - MAX_PLIES is a bound on wins
+    static final int INFINITY = 32000;   // more than any score, for the window of a search
+    static final int MAX_EVAL = WIN - MAX_PLIES - 1; // evaluations are clamped to this
+
+    private Score() {
+    }
+
+    /**
+     * @param ply how many plies after the root the game ends, with player having won
+     * @return the score of player winning then
+     */
+    static int win(int player, int ply) {
+        return player == CheckersData.RED ? WIN - ply : -(WIN - ply);
+    }
+
+    /**
+     * @return true if the score is a forced win for one side or the other
+     */
+    static boolean isWin(int score) {
+        return Math.abs(score) > WIN - MAX_PLIES;
+    }
+
+    /**
+     * @return how many plies after the root the win of a winning score comes
+     */
+    static int plies(int score) {
+        return WIN - Math.abs(score);
+    }
+
+    /**
+     * @return the score of an evaluation, rounded to centi-pieces and kept out of the range of wins
+     */
+    static int ofPieces(double pieces) {
+        return clamp((int) Math.round(pieces * PIECE));
+    }
+
+    static int clamp(int score) {
+        return Math.max(-MAX_EVAL, Math.min(MAX_EVAL, score));
+    }
+
+    /**
+     * Turn a score found at ply into one to store in a table, where the same position may come
+     * up again at another ply.  A win is stored as how many plies it is from the position
+     * rather than from the root.  Everything else is stored as it is.
+     */
+    static int toTable(int score, int ply) {
+        if (score > WIN - MAX_PLIES)
+            return score + ply;
+        if (score < -(WIN - MAX_PLIES))
+            return score - ply;
+        return score;
+    }
+
+    /**
+     * Turn a score from a table, see toTable, back into one for a position at ply.
+     */
+    static int fromTable(int score, int ply) {
+        if (score > WIN - MAX_PLIES)
+            return score - ply;
+        if (score < -(WIN - MAX_PLIES))
+            return score + ply;
+        return score;
+    }
+
+    /**
+     * @return the score for people: pieces with two decimals, like +1.45, or for a win, which
+     *         side wins and in how many plies, like +W12 for red winning in 12
+     */
+    static String format(int score) {
+        if (isWin(score))
+            return (score > 0 ? "+W" : "-W") + plies(score);
+        return String.format("%+.2f", (double) score / PIECE);
+    }
+}
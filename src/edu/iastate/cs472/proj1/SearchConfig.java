@@ -0,0 +1,381 @@
+package edu.iastate.cs472.proj1;
+
+import java.nio.file.Path;
+
+/**
+ * @author cswoods
+ *
+ * Immutable settings for a CheckersEngine, either an AlphaBetaSearch or a
+ * MonteCarloSearch, and for a ProofNumberSearch.  Since nothing in here can change
+ * after construction, one config can be shared by any number of searches and threads,
+ * and two games in the same JVM can still be run with different settings.
+ *
+ * Use the Builder to make one, or DEFAULT for the settings the GUI uses.
+ *
+ * The sizes of the big tables (the eval cache, the transposition table, the tree of a
+ * MonteCarloSearch and the table of a ProofNumberSearch) come from a MemoryBudget, unless
+ * one is set here by hand.  Set to BUDGETED, which is the default, a size follows the
+ * table's share of the budget.
+ */
+public final class SearchConfig {
+
+    /**
+     * The settings used when nothing else is specified.
+     */
+    public static final SearchConfig DEFAULT = new Builder().build();
+
+    /**
+     * The size of a table that is sized from the memory budget rather than by hand.
+     */
+    public static final int BUDGETED = -1;
+
+    private final int boardSize;
+    private final int maxDepth;
+    private final int noProgressPlies;
+    private final int evalCacheEntries;
+    private final int transpositionTableEntries;
+    private final Path transpositionTableFile;
+    private final boolean canonicalKeys;
+    private final Path networkFile;
+    private final Path traceFile;
+    private final int traceRecords;
+    private final int threads;
+    private final int playouts;
+    private final int treeNodes;
+    private final double exploration;
+    private final long solverNodes;
+    private final int solverTableEntries;
+    private final MemoryBudget memoryBudget;
+
+    private SearchConfig(Builder builder) {
+        this.boardSize = builder.boardSize;
+        this.maxDepth = builder.maxDepth;
+        this.noProgressPlies = builder.noProgressPlies;
+        this.evalCacheEntries = builder.evalCacheEntries;
+        this.transpositionTableEntries = builder.transpositionTableEntries;
+        this.transpositionTableFile = builder.transpositionTableFile;
+        this.canonicalKeys = builder.canonicalKeys;
+        this.networkFile = builder.networkFile;
+        this.traceFile = builder.traceFile;
+        this.traceRecords = builder.traceRecords;
+        this.threads = builder.threads;
+        this.playouts = builder.playouts;
+        this.treeNodes = builder.treeNodes;
+        this.exploration = builder.exploration;
+        this.solverNodes = builder.solverNodes;
+        this.solverTableEntries = builder.solverTableEntries;
+        this.memoryBudget = builder.memoryBudget;
+    }
+
+    /**
+     * @return the number of rows and columns of the boards this search is for
+     */
+    public int boardSize() {
+        return boardSize;
+    }
+
+    /**
+     * @return how many plies (single hops, so a double jump counts twice) the search looks ahead
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return how many plies in a row without a capture or a man moving make the game a draw
+     */
+    public int noProgressPlies() {
+        return noProgressPlies;
+    }
+
+    /**
+     * @return how many static evaluations the shared eval cache holds, 0 for no cache, or
+     *         BUDGETED to size it from the memory budget
+     */
+    public int evalCacheEntries() {
+        return evalCacheEntries;
+    }
+
+    /**
+     * @return how many positions the shared transposition table holds, or BUDGETED to size
+     *         it from the memory budget
+     */
+    public int transpositionTableEntries() {
+        return transpositionTableEntries;
+    }
+
+    /**
+     * @return the file the transposition table is memory-mapped from, so it survives a restart,
+     *         or null to keep it on the heap.  A table in a file holds at most 64M positions,
+     *         since it is mapped in one piece
+     */
+    public Path transpositionTableFile() {
+        return transpositionTableFile;
+    }
+
+    /**
+     * @return true if a position and its mirror image (turned around, colors swapped) share
+     *         one entry in the transposition table and eval cache, see CheckersData.canonicalHash
+     */
+    public boolean canonicalKeys() {
+        return canonicalKeys;
+    }
+
+    /**
+     * @return the file of the NnueNetwork to evaluate positions with, or null for the
+     *         handcrafted evaluation
+     */
+    public Path networkFile() {
+        return networkFile;
+    }
+
+    /**
+     * @return the file to write a trace of every node to, or null for no trace.  This only
+     *         does anything if the JVM was started with -Dcheckers.trace=true, see SearchTracer
+     */
+    public Path traceFile() {
+        return traceFile;
+    }
+
+    /**
+     * @return how many node records the trace file holds before it wraps around
+     */
+    public int traceRecords() {
+        return traceRecords;
+    }
+
+    /**
+     * @return how many threads a MonteCarloSearch grows its tree with
+     */
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * @return how many playouts a MonteCarloSearch runs per move when it has no time limit
+     */
+    public int playouts() {
+        return playouts;
+    }
+
+    /**
+     * @return how many nodes the tree of a MonteCarloSearch can grow to in one search, or
+     *         BUDGETED to size it from the memory budget
+     */
+    public int treeNodes() {
+        return treeNodes;
+    }
+
+    /**
+     * @return the UCT exploration constant of a MonteCarloSearch.  Higher tries more moves,
+     *         lower looks deeper into the ones that have done well so far
+     */
+    public double exploration() {
+        return exploration;
+    }
+
+    /**
+     * @return how many nodes a ProofNumberSearch may expand to solve one position
+     */
+    public long solverNodes() {
+        return solverNodes;
+    }
+
+    /**
+     * @return how many positions the table of a ProofNumberSearch holds, or BUDGETED to size
+     *         it from the memory budget
+     */
+    public int solverTableEntries() {
+        return solverTableEntries;
+    }
+
+    /**
+     * @return the budget the big tables of every search with this config are sized from,
+     *         MemoryBudget.DEFAULT unless another one was set
+     */
+    public MemoryBudget memoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return a builder that starts out with the values of this config
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.boardSize = boardSize;
+        builder.maxDepth = maxDepth;
+        builder.noProgressPlies = noProgressPlies;
+        builder.evalCacheEntries = evalCacheEntries;
+        builder.transpositionTableEntries = transpositionTableEntries;
+        builder.transpositionTableFile = transpositionTableFile;
+        builder.canonicalKeys = canonicalKeys;
+        builder.networkFile = networkFile;
+        builder.traceFile = traceFile;
+        builder.traceRecords = traceRecords;
+        builder.threads = threads;
+        builder.playouts = playouts;
+        builder.treeNodes = treeNodes;
+        builder.exploration = exploration;
+        builder.solverNodes = solverNodes;
+        builder.solverTableEntries = solverTableEntries;
+        builder.memoryBudget = memoryBudget;
+        return builder;
+    }
+
+    /**
+     * Builder for SearchConfig, since we will keep adding settings here.
+     */
+    public static final class Builder {
+        private int boardSize = CheckersData.DEFAULT_SIZE;
+        private int maxDepth = 8;
+        private int noProgressPlies = 80; // 40 moves for each player
+        private int evalCacheEntries = BUDGETED;
+        private int transpositionTableEntries = BUDGETED;
+        private Path transpositionTableFile = null;
+        private boolean canonicalKeys = true;
+        private Path networkFile = null;
+        private Path traceFile = null;
+        private int traceRecords = 1 << 20; // 32 MB
+        private int threads = 1;
+        private int playouts = 20000;
+        private int treeNodes = BUDGETED;
+        private double exploration = 1.0;
+        private long solverNodes = 10_000_000;
+        private int solverTableEntries = BUDGETED;
+        private MemoryBudget memoryBudget = MemoryBudget.DEFAULT;
+
+        public Builder boardSize(int boardSize) {
+            BoardGeometry.of(boardSize); // throws if there is no such board
+            this.boardSize = boardSize;
+            return this;
+        }
+
+        public Builder maxDepth(int maxDepth) {
+            // depths are stored in a byte in the transposition table and the trace
+            if (maxDepth < 1 || maxDepth > 127)
+                throw new IllegalArgumentException("maxDepth must be from 1 to 127, was " + maxDepth);
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        public Builder noProgressPlies(int noProgressPlies) {
+            if (noProgressPlies < 1)
+                throw new IllegalArgumentException("noProgressPlies must be at least 1, was " + noProgressPlies);
+            this.noProgressPlies = noProgressPlies;
+            return this;
+        }
+
+        /**
+         * @param evalCacheEntries the eval cache size, rounded down to a power of two, 0 to turn it
+         *                         off, or BUDGETED
+         */
+        public Builder evalCacheEntries(int evalCacheEntries) {
+            if (evalCacheEntries < 0 && evalCacheEntries != BUDGETED)
+                throw new IllegalArgumentException("evalCacheEntries can't be negative, was " + evalCacheEntries);
+            this.evalCacheEntries = evalCacheEntries;
+            return this;
+        }
+
+        /**
+         * @param transpositionTableEntries the transposition table size, rounded down to a power of two,
+         *                                  or BUDGETED
+         */
+        public Builder transpositionTableEntries(int transpositionTableEntries) {
+            if (transpositionTableEntries < 1 && transpositionTableEntries != BUDGETED)
+                throw new IllegalArgumentException("transpositionTableEntries must be at least 1, was "
+                        + transpositionTableEntries);
+            this.transpositionTableEntries = transpositionTableEntries;
+            return this;
+        }
+
+        public Builder transpositionTableFile(Path transpositionTableFile) {
+            this.transpositionTableFile = transpositionTableFile;
+            return this;
+        }
+
+        public Builder canonicalKeys(boolean canonicalKeys) {
+            this.canonicalKeys = canonicalKeys;
+            return this;
+        }
+
+        public Builder networkFile(Path networkFile) {
+            this.networkFile = networkFile;
+            return this;
+        }
+
+        public Builder traceFile(Path traceFile) {
+            this.traceFile = traceFile;
+            return this;
+        }
+
+        public Builder traceRecords(int traceRecords) {
+            if (traceRecords < 1 || traceRecords > (Integer.MAX_VALUE - SearchTracer.HEADER_SIZE) / SearchTracer.RECORD_SIZE)
+                throw new IllegalArgumentException("traceRecords must fit in a 2 GB file, was " + traceRecords);
+            this.traceRecords = traceRecords;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            if (threads < 1)
+                throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder playouts(int playouts) {
+            if (playouts < 1)
+                throw new IllegalArgumentException("playouts must be at least 1, was " + playouts);
+            this.playouts = playouts;
+            return this;
+        }
+
+        /**
+         * @param treeNodes how many nodes the tree can grow to, or BUDGETED
+         */
+        public Builder treeNodes(int treeNodes) {
+            if (treeNodes < 2 && treeNodes != BUDGETED)
+                throw new IllegalArgumentException("treeNodes must be at least 2, was " + treeNodes);
+            this.treeNodes = treeNodes;
+            return this;
+        }
+
+        public Builder exploration(double exploration) {
+            if (!(exploration >= 0))
+                throw new IllegalArgumentException("exploration can't be negative, was " + exploration);
+            this.exploration = exploration;
+            return this;
+        }
+
+        public Builder solverNodes(long solverNodes) {
+            if (solverNodes < 1)
+                throw new IllegalArgumentException("solverNodes must be at least 1, was " + solverNodes);
+            this.solverNodes = solverNodes;
+            return this;
+        }
+
+        /**
+         * @param solverTableEntries the solver's table size, rounded down to a power of two, or BUDGETED
+         */
+        public Builder solverTableEntries(int solverTableEntries) {
+            if (solverTableEntries < 2 && solverTableEntries != BUDGETED)
+                throw new IllegalArgumentException("solverTableEntries must be at least 2, was " + solverTableEntries);
+            this.solverTableEntries = solverTableEntries;
+            return this;
+        }
+
+        /**
+         * @param memoryBudget the budget to size the tables from, for a group of engines that
+         *                     should be kept apart from the rest of the JVM
+         */
+        public Builder memoryBudget(MemoryBudget memoryBudget) {
+            if (memoryBudget == null)
+                throw new IllegalArgumentException("memoryBudget can't be null");
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public SearchConfig build() {
+            return new SearchConfig(this);
+        }
+    }
+}
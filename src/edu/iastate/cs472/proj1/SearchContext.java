@@ -0,0 +1,158 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Arrays;
+
+/**
+ * @author cswoods
+ *
+ * All the mutable state of a single running search.  AlphaBetaSearch itself only holds
+ * its (immutable) config, so everything that changes while we search lives in here and
+ * is passed down the recursion instead.
+ *
+ * A context is only ever used by one search at a time.  They are expensive-ish to make,
+ * so they are handed out by a SearchContextPool and reused between searches.
+ */
+final class SearchContext {
+
+    final SearchConfig config;
+
+    /*  One scratch board per ply.  A node at depth d plays its moves into boards[d + 1],
+        which is safe because its children only ever write into deeper plies.  This way
+        a search doesn't allocate a new CheckersData for every node it expands. */
+    private final CheckersData[] boards;
+
+    /*  The positions of the game so far, followed by the positions on the line the
+        search is currently looking at, so repetitions can be scored as draws. */
+    final GameHistory path;
+
+    final EvalCache evalCache; // shared with every other context from the same pool
+    final TranspositionTable transpositionTable; // this too
+    final TranspositionTable.Entry ttEntry = new TranspositionTable.Entry(); // reused for every probe
+
+    /*  With a network, the first layer sums for the position at each ply.  The root is
+        index 0 and a node at depth d is index d + 1, like the PV table.  Null without one. */
+    private final NnueNetwork.Accumulator[] accumulators;
+
+    int depthLimit; // how deep the current iteration of iterative deepening goes
+    long rootBestNodes; // the node count when this iteration's best root move so far was put first
+    long rootBestAt;    // and the System.nanoTime() then
+
+    private boolean timed;  // whether this search has a deadline
+    private long deadline;  // the System.nanoTime() by which it has to stop
+    private long maxNodes = Long.MAX_VALUE; // the most nodes it may expand
+    boolean aborted;        // the search ran out of time or nodes, and everything in progress is thrown away
+
+    final SearchTracer tracer;  // where to record every node, or null. only used if SearchTracer.ENABLED
+    final int id;               // which context of its pool this is, for the trace
+    int searches;               // how many searches this context has started, for the trace
+    final CheckersMove[] movesIn; // movesIn[d] is the move that led to the node at depth d, for the trace
+
+    /*  The triangular principal variation table.  pv[i] holds the best line found from
+        the node at index i, which is pvLength[i] moves long.  The root is index 0 and a
+        node at depth d is index d + 1. */
+    private final CheckersMove[][] pv;
+    private final int[] pvLength;
+
+    final SearchStats stats = new SearchStats(); // what the current search has done so far
+
+    SearchContext(SearchConfig config, EvalCache evalCache, TranspositionTable transpositionTable,
+                  NnueNetwork network, SearchTracer tracer, int id) {
+        this.config = config;
+        this.evalCache = evalCache;
+        this.transpositionTable = transpositionTable;
+        this.tracer = tracer;
+        this.id = id;
+        movesIn = new CheckersMove[config.maxDepth() + 1];
+        pv = new CheckersMove[config.maxDepth() + 2][config.maxDepth() + 2];
+        pvLength = new int[config.maxDepth() + 2];
+        boards = new CheckersData[config.maxDepth() + 1];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new CheckersData(config.boardSize());
+        }
+        path = new GameHistory(256);
+        if (network != null) {
+            accumulators = new NnueNetwork.Accumulator[config.maxDepth() + 2];
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i] = network.newAccumulator();
+            }
+        } else {
+            accumulators = null;
+        }
+    }
+
+    /**
+     * @return the network accumulator for the given index, root first as described above
+     */
+    NnueNetwork.Accumulator accumulator(int index) {
+        return accumulators[index];
+    }
+
+    /**
+     * @param ply the depth of the node that will be searched on the returned board
+     * @return the scratch board reserved for the given ply
+     */
+    CheckersData boardAt(int ply) {
+        return boards[ply];
+    }
+
+    /**
+     * Start an empty principal variation for a node.
+     */
+    void clearPv(int index) {
+        pvLength[index] = 0;
+    }
+
+    /**
+     * Set the principal variation of a node to the given move followed by the
+     * principal variation of the node after it.
+     */
+    void updatePv(int index, CheckersMove move) {
+        pv[index][0] = move;
+        System.arraycopy(pv[index + 1], 0, pv[index], 1, pvLength[index + 1]);
+        pvLength[index] = pvLength[index + 1] + 1;
+    }
+
+    /**
+     * @return a copy of the principal variation of a node
+     */
+    CheckersMove[] pv(int index) {
+        return Arrays.copyOf(pv[index], pvLength[index]);
+    }
+
+    /**
+     * Give the search its hard limits: a time limit, or a number of nodes.
+     *
+     * @param started when the search started, from System.nanoTime()
+     * @param limits  how long it may take
+     */
+    void startClock(long started, SearchLimits limits) {
+        timed = limits.isTimed();
+        deadline = started + limits.hardNanos();
+        maxNodes = limits.maxNodes();
+    }
+
+    /**
+     * Check whether the search has run out of time or nodes.  Reading the clock isn't free,
+     * so it is only read every 1024 nodes, which is well under a millisecond.  The first
+     * iteration is never cut short, so there is always a move to play.
+     *
+     * @return true if the search should stop right away
+     */
+    boolean outOfTime() {
+        if (!aborted && depthLimit > 1 && (stats.nodes >= maxNodes
+                || timed && (stats.nodes & 1023) == 0 && System.nanoTime() - deadline > 0))
+            aborted = true;
+        return aborted;
+    }
+
+    /**
+     * Clear anything left over from the previous search.
+     */
+    void reset() {
+        stats.clear();
+        path.clear();
+        timed = false;
+        maxNodes = Long.MAX_VALUE;
+        aborted = false;
+    }
+}
@@ -0,0 +1,183 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * @author cswoods
+ *
+ * A pool of pre-made SearchContexts for one SearchConfig.  Each search checks out a
+ * context, uses it, and gives it back, so many games can search at once (on one
+ * AlphaBetaSearch or several) without sharing any state and without reallocating
+ * the buffers every move.
+ *
+ * The things the contexts do share are an EvalCache and a TranspositionTable, which
+ * are both lock-free, so what one search finds out is free for all the others.  They
+ * last as long as the pool, so they also carry over from one move of a game to the next.
+ * The NnueNetwork, if there is one, is shared too, since it never changes.
+ *
+ * The cache and the table are sized from the config's MemoryBudget, unless the config sets
+ * their sizes.  When their shares of the budget change, because other engines came or went,
+ * they are resized the next time the pool is idle: when a search starts and no other search
+ * has a context checked out, or when the last one gives its context back.  A search never
+ * has the tables resized out from under it, so nothing it stores is lost.
+ *
+ * If every context is checked out, a new one is made instead of blocking. At most
+ * capacity contexts are kept around when they are given back.
+ */
+public final class SearchContextPool {
+
+    private final SearchConfig config;
+    private final ArrayBlockingQueue<SearchContext> idle;
+    private final EvalCache evalCache; // shared by every context of this pool
+    private final TranspositionTable transpositionTable; // this too
+    private final MemoryBudget.Share evalCacheShare; // how big the eval cache should be
+    private final MemoryBudget.Share transpositionTableShare; // and the transposition table
+    private final NnueNetwork network; // the network to evaluate with, or null for the handcrafted evaluation
+    private final SearchTracer tracer; // and this, if tracing is on
+    private int contexts; // how many contexts have been made, to give each one an id
+    private int inUse; // how many contexts are checked out right now; the tables are only resized at 0
+
+    /**
+     * Create a pool and warm it up with the given number of contexts.
+     *
+     * @param config   the config every context in this pool is built for
+     * @param capacity how many idle contexts to make now and keep around at most
+     */
+    public SearchContextPool(SearchConfig config, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+        this.config = config;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        MemoryBudget budget = config.memoryBudget();
+        this.evalCacheShare = budget.share(this, "eval cache", 1, EvalCache.BYTES_PER_ENTRY,
+                EvalCache.MAX_ENTRIES, config.evalCacheEntries());
+        this.transpositionTableShare = budget.share(this, "transposition table", 4,
+                TranspositionTable.BYTES_PER_ENTRY, TranspositionTable.MAX_ENTRIES,
+                config.transpositionTableEntries());
+        this.evalCache = new EvalCache(evalCacheShare.entries());
+        this.network = config.networkFile() == null ? null : loadNetwork(config);
+        // a table in a file can outlast the evaluation it was filled with, so it has to match
+        this.transpositionTable = config.transpositionTableFile() == null
+                ? new TranspositionTable(transpositionTableShare.entries())
+                : openTranspositionTable(config, transpositionTableShare.entries(),
+                        network == null ? 0 : network.identity);
+        if (transpositionTable.isMapped())
+            transpositionTableShare.fix(transpositionTable.capacity());
+        fitBudget();
+        this.tracer = SearchTracer.ENABLED && config.traceFile() != null ? openTracer(config) : null;
+        for (int i = 0; i < capacity; i++) {
+            idle.add(newContext());
+        }
+    }
+
+    public SearchConfig config() {
+        return config;
+    }
+
+    /**
+     * @return the network the searches evaluate with, or null for the handcrafted evaluation
+     */
+    NnueNetwork network() {
+        return network;
+    }
+
+    /**
+     * Check out a context for one search.  It must be given back with release().
+     */
+    SearchContext acquire() {
+        synchronized (this) {
+            if (inUse == 0)
+                fitBudget();
+            inUse++;
+        }
+        SearchContext context = idle.poll();
+        if (context == null) // everything is in use, so we just have to make another one
+            context = newContext();
+        context.reset();
+        return context;
+    }
+
+    /**
+     * Resize the eval cache and transposition table to their shares of the budget, if they
+     * changed.  A table in a file keeps its size, and just counts against the budget.  Only
+     * called with no context checked out, and with the pool locked, so no search is using
+     * the tables and no other thread is resizing them.
+     */
+    private synchronized void fitBudget() {
+        if (evalCache.capacity() != EvalCache.sizeFor(evalCacheShare.entries()))
+            evalCache.resize(evalCacheShare.entries());
+        evalCacheShare.using((long) evalCache.capacity() * EvalCache.BYTES_PER_ENTRY);
+        if (transpositionTable.capacity() != TranspositionTable.sizeFor(transpositionTableShare.entries())
+                && !transpositionTable.isMapped())
+            transpositionTable.resize(transpositionTableShare.entries());
+        transpositionTableShare.using((long) transpositionTable.capacity() * TranspositionTable.BYTES_PER_ENTRY);
+    }
+
+    private synchronized SearchContext newContext() {
+        return new SearchContext(config, evalCache, transpositionTable, network, tracer, contexts++);
+    }
+
+    private static TranspositionTable openTranspositionTable(SearchConfig config, int entries, long evaluator) {
+        try {
+            return new TranspositionTable(entries, config.transpositionTableFile(),
+                    config.boardSize(), evaluator);
+        } catch (IOException e) {
+            throw new UncheckedIOException("couldn't open transposition table file "
+                    + config.transpositionTableFile(), e);
+        }
+    }
+
+    private static NnueNetwork loadNetwork(SearchConfig config) {
+        try {
+            NnueNetwork network = NnueNetwork.load(config.networkFile());
+            if (network.boardSize != config.boardSize())
+                throw new IllegalArgumentException("network " + config.networkFile() + " is for " + network.boardSize
+                        + "x" + network.boardSize + " boards, not " + config.boardSize() + "x" + config.boardSize());
+            return network;
+        } catch (IOException e) {
+            throw new UncheckedIOException("couldn't load network file " + config.networkFile(), e);
+        }
+    }
+
+    private static SearchTracer openTracer(SearchConfig config) {
+        try {
+            return new SearchTracer(config.traceFile(), config.traceRecords());
+        } catch (IOException e) {
+            throw new UncheckedIOException("couldn't open trace file " + config.traceFile(), e);
+        }
+    }
+
+    /**
+     * Write the transposition table out to its file now, if it has one.  The OS writes it
+     * out eventually anyway, even if the JVM exits without calling this, so this is only
+     * needed to survive the whole machine going down.
+     */
+    public void flush() {
+        transpositionTable.flush();
+    }
+
+    /**
+     * Forget everything the eval cache and transposition table have learned, so the next
+     * search starts out like the first one, e.g. between the unrelated positions of a
+     * PositionSuite.  No search may be running on this pool while this runs.
+     */
+    public void clear() {
+        evalCache.clear();
+        transpositionTable.clear();
+    }
+
+    /**
+     * Give a context back after the search using it is done.
+     */
+    void release(SearchContext context) {
+        idle.offer(context); // if the pool is already full, the context is just dropped
+        synchronized (this) {
+            // searches that keep overlapping would never find the pool idle when they start, so
+            // the last one out catches up on any resize that had to wait
+            if (--inUse == 0)
+                fitBudget();
+        }
+    }
+}
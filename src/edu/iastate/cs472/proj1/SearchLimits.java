@@ -0,0 +1,112 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * How long one search may take, as worked out by a TimeManager.
+ *
+ * The soft limit is the time the search should aim to use.  It is only checked between
+ * iterations of iterative deepening, and it shrinks when the best move has stayed the same
+ * for a few iterations and grows when it just changed, because then a deeper look is worth
+ * the most.  The hard limit is checked while searching, and the search gives up on the
+ * iteration it is in and plays the best move it has when it gets there.
+ *
+ * Limits can also be a number of nodes instead of a time, see ofNodes, which stops a
+ * search at the same point however fast the machine is.  That is for testing, e.g. by
+ * PositionSuite, and not for playing on a clock.
+ */
+public final class SearchLimits {
+
+    private final long softNanos;
+    private final long hardNanos;
+    private final long maxNodes; // Long.MAX_VALUE if only time counts
+
+    /**
+     * @param softMillis the time to aim for
+     * @param hardMillis the time the search must never go over
+     */
+    public SearchLimits(long softMillis, long hardMillis) {
+        if (softMillis < 0 || hardMillis < softMillis)
+            throw new IllegalArgumentException("need 0 <= soft <= hard, was soft " + softMillis + ", hard " + hardMillis);
+        this.softNanos = softMillis * 1_000_000;
+        this.hardNanos = hardMillis * 1_000_000;
+        this.maxNodes = Long.MAX_VALUE;
+    }
+
+    private SearchLimits(long maxNodes) {
+        this.softNanos = Long.MAX_VALUE;
+        this.hardNanos = Long.MAX_VALUE;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Limits on how many nodes a search may expand, with no limit on time.  An AlphaBetaSearch
+     * deepens until it gets there and then gives up on the iteration it is in, like at the
+     * hard limit.  For a MonteCarloSearch, a node is a playout.
+     */
+    public static SearchLimits ofNodes(long maxNodes) {
+        if (maxNodes < 1)
+            throw new IllegalArgumentException("maxNodes must be at least 1, was " + maxNodes);
+        return new SearchLimits(maxNodes);
+    }
+
+    public long softMillis() {
+        return softNanos / 1_000_000;
+    }
+
+    public long hardMillis() {
+        return hardNanos / 1_000_000;
+    }
+
+    long hardNanos() {
+        return hardNanos;
+    }
+
+    /**
+     * @return true if these limits are on time, false if they are only on nodes
+     */
+    boolean isTimed() {
+        return hardNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the most nodes the search may expand, or Long.MAX_VALUE for no limit
+     */
+    public long maxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Decide whether to start another iteration.  Each iteration takes a few times as long
+     * as the one before, so by the time half of the soft limit is gone, the next one would
+     * most likely go over it, and the hard limit would just throw it away unfinished.
+     *
+     * With limits on nodes, the next iteration is always started while there are nodes left.
+     *
+     * @param elapsedNanos     how long the search has taken so far
+     * @param nodes            how many nodes it has expanded so far
+     * @param stableIterations for how many iterations in a row the best move has stayed the same
+     * @return true to search another ply deeper
+     */
+    boolean startNextIteration(long elapsedNanos, long nodes, int stableIterations) {
+        if (!isTimed())
+            return nodes < maxNodes;
+        double stability;
+        if (stableIterations == 0)
+            stability = 1.5;  // the best move just changed, so look harder at it
+        else if (stableIterations == 1)
+            stability = 1.0;
+        else if (stableIterations == 2)
+            stability = 0.75;
+        else
+            stability = 0.5;  // it hasn't changed in a while, so it probably won't
+        return elapsedNanos < Math.min(softNanos * stability, hardNanos) / 2;
+    }
+
+    @Override
+    public String toString() {
+        if (!isTimed())
+            return maxNodes + " nodes";
+        return "soft " + softMillis() + " ms, hard " + hardMillis() + " ms";
+    }
+}
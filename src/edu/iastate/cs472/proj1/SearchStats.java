@@ -0,0 +1,134 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * Counters describing what a search did.  Pass one to AlphaBetaSearch.makeMove to have
+ * the counts of that search added to it; the same object can be passed to many searches
+ * to get totals.  This is not thread-safe, so give each thread its own.
+ */
+public final class SearchStats {
+
+    long nodes;          // nodes expanded
+    long evaluations;    // leaves that needed a static evaluation
+    long evalCacheHits;  // evaluations that were found in the eval cache
+    long ttProbes;       // transposition table lookups
+    long ttHits;         // lookups that found the position
+    long ttMirrorHits;   // hits on an entry stored by the position's mirror image, see CheckersData.canonicalHash
+    int depth;           // the deepest iteration a search finished
+    long playouts;       // games played out to the end by a MonteCarloSearch
+    long bestMoveNodes;  // nodes expanded before an AlphaBetaSearch first had the move it played as its best
+    long bestMoveNanos;  // and how long that took
+
+    public long nodes() {
+        return nodes;
+    }
+
+    public long evaluations() {
+        return evaluations;
+    }
+
+    public long evalCacheHits() {
+        return evalCacheHits;
+    }
+
+    public long ttProbes() {
+        return ttProbes;
+    }
+
+    public long ttHits() {
+        return ttHits;
+    }
+
+    /**
+     * @return how many transposition table hits were on an entry the mirror image of the
+     *         position stored, which are hits only canonical keys could get
+     */
+    public long ttMirrorHits() {
+        return ttMirrorHits;
+    }
+
+    /**
+     * @return the deepest iteration that a search finished, the most of any search added in
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public long playouts() {
+        return playouts;
+    }
+
+    /**
+     * @return how many nodes an AlphaBetaSearch had expanded when it found the move it played,
+     *         which is when the iteration that made it the best move for good got to that move
+     *         and put it first, added up over the searches.  A MonteCarloSearch doesn't keep
+     *         track of this, and leaves it 0
+     */
+    public long bestMoveNodes() {
+        return bestMoveNodes;
+    }
+
+    /**
+     * @return how many nanoseconds that took, like bestMoveNodes
+     */
+    public long bestMoveNanos() {
+        return bestMoveNanos;
+    }
+
+    /**
+     * @return the fraction of evaluations that were answered by the eval cache, from 0 to 1
+     */
+    public double evalCacheHitRate() {
+        return evaluations == 0 ? 0 : (double) evalCacheHits / evaluations;
+    }
+
+    /**
+     * @return the fraction of transposition table lookups that found the position, from 0 to 1
+     */
+    public double ttHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    /**
+     * Add the counts of another SearchStats into this one.
+     */
+    public void add(SearchStats other) {
+        nodes += other.nodes;
+        evaluations += other.evaluations;
+        evalCacheHits += other.evalCacheHits;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        ttMirrorHits += other.ttMirrorHits;
+        depth = Math.max(depth, other.depth);
+        playouts += other.playouts;
+        bestMoveNodes += other.bestMoveNodes;
+        bestMoveNanos += other.bestMoveNanos;
+    }
+
+    /**
+     * Set every count back to 0.
+     */
+    public void clear() {
+        nodes = 0;
+        evaluations = 0;
+        evalCacheHits = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        ttMirrorHits = 0;
+        depth = 0;
+        playouts = 0;
+        bestMoveNodes = 0;
+        bestMoveNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (playouts > 0)
+            return String.format("playouts %d, tree nodes %d", playouts, nodes);
+        return String.format("depth %d, nodes %d, evaluations %d, eval cache hits %d (%.1f%%), "
+                        + "tt hits %d (%.1f%%, %d mirrored)",
+                depth, nodes, evaluations, evalCacheHits, 100 * evalCacheHitRate(),
+                ttHits, 100 * ttHitRate(), ttMirrorHits);
+    }
+}
@@ -0,0 +1,253 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author cswoods
+ *
+ * Reads a trace file written by SearchTracer and reports where the search spent its time:
+ * how many nodes each depth had and how often they were cut off, the root moves with the
+ * biggest subtrees, and the nodes with the worst move ordering, which are the ones that
+ * searched whole subtrees before finding the move that caused the cutoff.
+ *
+ * Usage: java edu.iastate.cs472.proj1.SearchTraceAnalyzer trace-file [how many to list]
+ *
+ * The tree is put back together from the order of the records.  Nodes are written when
+ * they finish, so for each context the children of a node are the records right before
+ * it that are one ply deeper and haven't been claimed by another node yet.  If the ring
+ * wrapped around, the oldest nodes are gone and the first few subtrees come out short.
+ */
+public final class SearchTraceAnalyzer {
+
+    // one array per field, indexed by record, in the order they were written
+    private final int count;
+    private final int[] context, search, depth, depthLimit, flags, cutoffIndex, moveCount, moveIn, bestMove;
+    private final int[] value;
+
+    // what the analysis works out
+    private final long[] size;   // how many nodes are in the subtree of each record, including it
+    private final int[] parent;  // the record of the parent node, or -1 for the nodes right after the root
+    private final int[][] children; // the children of each record, in the order they were searched
+
+    private SearchTraceAnalyzer(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != SearchTracer.MAGIC)
+            throw new IOException(file + " is not a search trace");
+        if (buffer.getInt(4) != SearchTracer.VERSION)
+            throw new IOException(file + " is trace version " + buffer.getInt(4)
+                    + ", but this reads version " + SearchTracer.VERSION);
+        int capacity = buffer.getInt(8);
+        int recordSize = buffer.getInt(12);
+        long written = buffer.getLong(16);
+
+        // once the ring has wrapped, the oldest record is the one that would be written next
+        count = (int) Math.min(written, capacity);
+        long first = written - count;
+        context = new int[count];
+        search = new int[count];
+        depth = new int[count];
+        depthLimit = new int[count];
+        flags = new int[count];
+        cutoffIndex = new int[count];
+        moveCount = new int[count];
+        moveIn = new int[count];
+        bestMove = new int[count];
+        value = new int[count];
+        for (int i = 0; i < count; i++) {
+            int offset = SearchTracer.HEADER_SIZE + (int) ((first + i) % capacity) * recordSize;
+            context[i] = buffer.getShort(offset) & 0xFFFF;
+            depth[i] = buffer.get(offset + 2);
+            depthLimit[i] = buffer.get(offset + 3);
+            flags[i] = buffer.get(offset + 4);
+            cutoffIndex[i] = buffer.get(offset + 5);
+            moveCount[i] = buffer.get(offset + 6) & 0xFF;
+            moveIn[i] = buffer.getShort(offset + 8) & 0xFFFF;
+            bestMove[i] = buffer.getShort(offset + 10) & 0xFFFF;
+            search[i] = buffer.getInt(offset + 12);
+            value[i] = buffer.getInt(offset + 24);
+        }
+
+        size = new long[count];
+        parent = new int[count];
+        children = new int[count][];
+        buildTree();
+    }
+
+    /**
+     * Work out the parent, children and subtree size of every record.
+     */
+    private void buildTree() {
+        Arrays.fill(parent, -1);
+        // one stack of unclaimed nodes per context, since contexts write their records mixed together
+        List<int[]> stacks = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+        int[] lastSearch = new int[1 << 16];
+        int[] lastLimit = new int[1 << 16];
+        int[] kids = new int[256];
+
+        for (int i = 0; i < count; i++) {
+            int c = context[i];
+            while (stacks.size() <= c) {
+                stacks.add(new int[64]);
+                heights.add(0);
+            }
+            int[] stack = stacks.get(c);
+            int height = heights.get(c);
+
+            // a new search or a new iteration starts a new tree
+            if (search[i] != lastSearch[c] || depthLimit[i] != lastLimit[c]) {
+                height = 0;
+                lastSearch[c] = search[i];
+                lastLimit[c] = depthLimit[i];
+            }
+
+            // everything deeper than this node that hasn't been claimed yet is one of its children
+            int n = 0;
+            size[i] = 1;
+            while (height > 0 && depth[stack[height - 1]] > depth[i]) {
+                int child = stack[--height];
+                parent[child] = i;
+                size[i] += size[child];
+                kids[n++] = child;
+            }
+            // they came off the stack last one first
+            int[] mine = new int[n];
+            for (int k = 0; k < n; k++) {
+                mine[k] = kids[n - 1 - k];
+            }
+            children[i] = mine;
+
+            if (height == stack.length) {
+                stack = Arrays.copyOf(stack, height * 2);
+                stacks.set(c, stack);
+            }
+            stack[height++] = i;
+            heights.set(c, height);
+        }
+    }
+
+    /**
+     * @return how many nodes the children searched before the cutoff move cost, or 0 if the
+     *         node didn't cut off or cut off on its first move
+     */
+    private long wasted(int i) {
+        long wasted = 0;
+        for (int k = 0; k < cutoffIndex[i] && k < children[i].length; k++) {
+            wasted += size[children[i][k]];
+        }
+        return wasted;
+    }
+
+    /**
+     * @return the moves from the root to a node
+     */
+    private String path(int i) {
+        List<String> moves = new ArrayList<>();
+        for (int node = i; node != -1; node = parent[node]) {
+            moves.add(decode(moveIn[node]));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int k = moves.size() - 1; k >= 0; k--) {
+            sb.append(moves.get(k));
+            if (k > 0)
+                sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String decode(int code) {
+        if (code == 0)
+            return "-";
+        return "(" + (code >>> 12 & 0xF) + "," + (code >>> 8 & 0xF) + ")-(" + (code >>> 4 & 0xF) + "," + (code & 0xF) + ")";
+    }
+
+    private void report(int top) {
+        System.out.println(count + " nodes");
+        if (count == 0)
+            return;
+
+        // nodes per depth, and how well they were ordered
+        int maxDepth = 0;
+        for (int i = 0; i < count; i++) {
+            maxDepth = Math.max(maxDepth, depth[i]);
+        }
+        long[] nodes = new long[maxDepth + 1];
+        long[] leaves = new long[maxDepth + 1];
+        long[] ttCutoffs = new long[maxDepth + 1];
+        long[] cutoffs = new long[maxDepth + 1];
+        long[] firstMoveCutoffs = new long[maxDepth + 1];
+        for (int i = 0; i < count; i++) {
+            int d = depth[i];
+            nodes[d]++;
+            if ((flags[i] & (SearchTracer.LEAF | SearchTracer.DRAW | SearchTracer.WIN_DISTANCE)) != 0)
+                leaves[d]++;
+            if ((flags[i] & SearchTracer.TT_CUTOFF) != 0)
+                ttCutoffs[d]++;
+            if (cutoffIndex[i] >= 0) {
+                cutoffs[d]++;
+                if (cutoffIndex[i] == 0)
+                    firstMoveCutoffs[d]++;
+            }
+        }
+        System.out.println();
+        System.out.println("depth      nodes     leaves  tt cutoffs    cutoffs  on 1st move");
+        for (int d = 0; d <= maxDepth; d++) {
+            System.out.printf("%5d %10d %10d %11d %10d %11.1f%%%n", d, nodes[d], leaves[d], ttCutoffs[d], cutoffs[d],
+                    cutoffs[d] == 0 ? 0 : 100.0 * firstMoveCutoffs[d] / cutoffs[d]);
+        }
+
+        // the root moves that cost the most
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Integer[] rootMoves = Arrays.stream(order).filter(i -> depth[i] == 0).toArray(Integer[]::new);
+        Arrays.sort(rootMoves, Comparator.comparingLong((Integer i) -> size[i]).reversed());
+        System.out.println();
+        System.out.println("biggest subtrees below the root:");
+        for (int k = 0; k < Math.min(top, rootMoves.length); k++) {
+            int i = rootMoves[k];
+            System.out.printf("%10d nodes  search %d, depth limit %d, %s, value %s%n",
+                    size[i], search[i], depthLimit[i], decode(moveIn[i]), Score.format(value[i]));
+        }
+
+        // the nodes where move ordering let us down the most
+        Integer[] worst = Arrays.stream(order).filter(i -> cutoffIndex[i] > 0).toArray(Integer[]::new);
+        long[] waste = new long[count];
+        for (int i : worst) {
+            waste[i] = wasted(i);
+        }
+        Arrays.sort(worst, Comparator.comparingLong((Integer i) -> waste[i]).reversed());
+        System.out.println();
+        System.out.println("worst ordered nodes (nodes searched before the cutoff move):");
+        for (int k = 0; k < Math.min(top, worst.length); k++) {
+            int i = worst[k];
+            System.out.printf("%10d nodes  cut off on move %d of %d by %s at depth %d of %d%n", waste[i],
+                    cutoffIndex[i] + 1, moveCount[i], decode(bestMove[i]), depth[i], depthLimit[i]);
+            System.out.println("            after " + path(i));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SearchTraceAnalyzer trace-file [how many to list]");
+            System.exit(1);
+        }
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        new SearchTraceAnalyzer(Paths.get(args[0])).report(top);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author cswoods
+ *
+ * Records every node a search visits as a fixed-width binary record in a memory-mapped
+ * file, so a slow search can be taken apart afterwards with SearchTraceAnalyzer.
+ *
+ * Tracing is compiled in only when the JVM is started with -Dcheckers.trace=true, because
+ * ENABLED is a constant and every use of the tracer in the search is behind it.  Without
+ * the flag the JIT throws that code away and the search costs exactly what it did before.
+ * With the flag, a SearchConfig with a traceFile gets a tracer shared by every context
+ * of its pool.
+ *
+ * The file is a ring: once it has capacity records, new ones overwrite the oldest.  Each
+ * record is claimed with one atomic increment, so searches on several threads can write
+ * at once; every record says which context wrote it.  Nodes are written when they finish,
+ * so the records of one context come in post-order: every node comes right after all of
+ * its children.
+ *
+ * File layout, all little-endian:
+ *
+ *   header (64 bytes): int MAGIC, int VERSION, int capacity, int RECORD_SIZE,
+ *                      long number of records ever written, then zeros
+ *   record (32 bytes): short  context id
+ *                      byte   depth of the node (0 for the nodes right after the root)
+ *                      byte   depth limit of the iteration
+ *                      byte   flags, see below
+ *                      byte   index of the move that caused a cutoff, or -1 for none
+ *                      byte   number of legal moves
+ *                      byte   (unused)
+ *                      short  move that led to the node, see TranspositionTable.encode
+ *                      short  best move found at the node
+ *                      int    which search of its context this was
+ *                      int    alpha the node was searched with, see Score
+ *                      int    beta the node was searched with
+ *                      int    value the node returned
+ *                      int    (unused)
+ */
+final class SearchTracer {
+
+    /**
+     * Whether tracing is compiled into the search at all.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("checkers.trace");
+
+    static final int MAGIC = 0x434B5452; // "CKTR"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+
+    // flags
+    static final int MAX_NODE = 1;          // RED to move
+    static final int LEAF = 2;              // evaluated instead of searched
+    static final int TT_CUTOFF = 4;         // answered by the transposition table
+    static final int DRAW = 8;              // a repetition or no progress
+    static final int NO_MOVES = 16;         // the player to move has lost
+    static final int JUMP_CONTINUATION = 32; // the middle of a jumping spree
+    static final int WIN_DISTANCE = 64;      // cut off because no win from here could be quick enough
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Create (or overwrite) a trace file with room for the given number of records.
+     */
+    SearchTracer(Path file, int capacity) throws IOException {
+        this.capacity = capacity;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, RECORD_SIZE);
+        buffer.putLong(16, 0);
+    }
+
+    /**
+     * Write the record for a node that just finished.
+     */
+    void record(int contextId, int searchId, int depth, int depthLimit, int flags, CheckersMove moveIn,
+                CheckersMove bestMove, int cutoffIndex, int moveCount, int alpha, int beta, int value) {
+        long n = written.getAndIncrement();
+        int offset = HEADER_SIZE + (int) (n % capacity) * RECORD_SIZE;
+        buffer.putShort(offset, (short) contextId);
+        buffer.put(offset + 2, (byte) depth);
+        buffer.put(offset + 3, (byte) depthLimit);
+        buffer.put(offset + 4, (byte) flags);
+        buffer.put(offset + 5, (byte) cutoffIndex);
+        buffer.put(offset + 6, (byte) moveCount);
+        buffer.putShort(offset + 8, (short) TranspositionTable.encode(moveIn));
+        buffer.putShort(offset + 10, (short) TranspositionTable.encode(bestMove));
+        buffer.putInt(offset + 12, searchId);
+        buffer.putInt(offset + 16, alpha);
+        buffer.putInt(offset + 20, beta);
+        buffer.putInt(offset + 24, value);
+    }
+
+    /**
+     * Write the record count into the header, so a reader knows where the ring starts.
+     * This is done at the end of every search rather than for every record.
+     */
+    void sync() {
+        buffer.putLong(16, written.get());
+    }
+}
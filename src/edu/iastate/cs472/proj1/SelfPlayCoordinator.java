@@ -0,0 +1,353 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author cswoods
+ *
+ * Plays a match between two engines on several worker JVMs at once, so self-play isn't
+ * held up by the GC and safepoints of one JVM.  Each worker is a SelfPlayWorker process
+ * on this machine, started with the same java, class path and JVM options as this one,
+ * and plays one game at a time.  The games don't share anything, so the match goes about
+ * as many times faster as there are workers, as long as there is a core for each.
+ *
+ * A match is a number of openings (random first turns, see SelfPlayGame), each played
+ * twice with the colors swapped.  Every game is a job on one queue, which the workers
+ * take from as they finish, and the results go into one SelfPlayReport as they come in.
+ *
+ * Each worker gets its own socket on the loopback address, and the messages are lines
+ * of text, with fields separated by spaces:
+ *
+ *   worker:      HELLO pid
+ *   coordinator: JOB id boardSize openingSeed openingTurns maxTurns redEngine blackEngine
+ *   worker:      TURN id turns      (after every turn of the game)
+ *   worker:      RESULT id winner turns reason nodes millis
+ *   coordinator: QUIT
+ *
+ * A worker that dies, hangs up or sends something else is killed and a new one is
+ * started in its place, and the game it was playing goes back on the queue for another
+ * try.  So is a worker that goes turnTimeout without finishing a turn, since it is
+ * deadlocked or stuck in a loop and would hold up the match forever; that's what the
+ * TURN messages are for.  A game that has killed maxAttempts workers is given up on.
+ *
+ * Usage: java edu.iastate.cs472.proj1.SelfPlayCoordinator [--workers n] [--openings n]
+ *        [--opening-turns n] [--max-turns n] [--board n] [--seed n] [--turn-timeout seconds]
+ *        engineA engineB
+ *
+ * where an engine is a spec like alphabeta:depth=6 or mcts:playouts=2000, see
+ * SelfPlayWorker.config.
+ */
+public final class SelfPlayCoordinator {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 60_000; // how long a new worker has to connect back
+    static final int DEFAULT_TURN_TIMEOUT_MILLIS = 60_000;   // how long a worker has for one turn of a game
+
+    private final int workers;
+    private final int boardSize;
+    private final int openingTurns;
+    private final int maxTurns;
+    private final int maxAttempts;
+    private final int turnTimeoutMillis;
+
+    /**
+     * A game to play.
+     */
+    private static final class Job {
+        final int id;
+        final long openingSeed;
+        final boolean aIsRed;
+        int attempts; // how many workers have died playing it
+
+        Job(int id, long openingSeed, boolean aIsRed) {
+            this.id = id;
+            this.openingSeed = openingSeed;
+            this.aIsRed = aIsRed;
+        }
+    }
+
+    // the match that is running
+    private String engineA, engineB;
+    private LinkedBlockingQueue<Job> queue;
+    private AtomicInteger unfinished; // games that are queued or being played
+    private AtomicInteger liveLinks;  // workers that haven't given up on starting
+    private SelfPlayReport report;
+    private PrintStream progress;
+
+    /**
+     * @param workers      how many worker JVMs to play on
+     * @param boardSize    the size of the board
+     * @param openingTurns how many random turns each game starts with
+     * @param maxTurns     how many turns a game can go before it is called a draw
+     * @param maxAttempts  how many workers a game can kill before it is given up on
+     * @param turnTimeoutMillis how long a worker can take over one turn before it is taken to
+     *                          be stuck, and killed
+     */
+    public SelfPlayCoordinator(int workers, int boardSize, int openingTurns, int maxTurns, int maxAttempts,
+                               int turnTimeoutMillis) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers must be at least 1, was " + workers);
+        if (openingTurns < 0 || maxTurns < 1 || maxAttempts < 1 || turnTimeoutMillis < 1)
+            throw new IllegalArgumentException("openingTurns can't be negative, and maxTurns, maxAttempts and "
+                    + "turnTimeoutMillis must be at least 1");
+        BoardGeometry.of(boardSize); // throws if there is no such board
+        this.workers = workers;
+        this.boardSize = boardSize;
+        this.openingTurns = openingTurns;
+        this.maxTurns = maxTurns;
+        this.maxAttempts = maxAttempts;
+        this.turnTimeoutMillis = turnTimeoutMillis;
+    }
+
+    public SelfPlayCoordinator(int workers, int boardSize, int openingTurns, int maxTurns, int maxAttempts) {
+        this(workers, boardSize, openingTurns, maxTurns, maxAttempts, DEFAULT_TURN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Play a match and wait for it to finish.
+     *
+     * @param engineA  the spec of one engine, see SelfPlayWorker.config
+     * @param engineB  and the other
+     * @param openings how many openings to play, each one twice
+     * @param seed     the seed the openings are chosen with
+     * @param progress where to print a line for every game as it finishes, or null
+     * @return the results of every game
+     */
+    public synchronized SelfPlayReport play(String engineA, String engineB, int openings, long seed,
+                                            PrintStream progress) throws InterruptedException {
+        for (String spec : new String[]{engineA, engineB}) {
+            if (spec.isEmpty() || spec.chars().anyMatch(Character::isWhitespace))
+                throw new IllegalArgumentException("an engine spec can't be empty or have spaces in it, was '" + spec + "'");
+            SelfPlayWorker.config(spec, boardSize); // throws here rather than in every worker
+        }
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.progress = progress;
+        report = new SelfPlayReport(engineA, engineB, workers);
+        queue = new LinkedBlockingQueue<>();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int i = 0; i < openings; i++) {
+            long openingSeed = seeds.nextLong();
+            queue.add(new Job(2 * i, openingSeed, true));
+            queue.add(new Job(2 * i + 1, openingSeed, false));
+        }
+        unfinished = new AtomicInteger(queue.size());
+        liveLinks = new AtomicInteger(workers);
+
+        Thread[] links = new Thread[workers];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = new Thread(this::runLink, "self-play-link-" + i);
+            links[i].start();
+        }
+        for (Thread link : links) {
+            link.join();
+        }
+        return report;
+    }
+
+    /**
+     * Keep one worker going until every game is done: start it, give it games until there
+     * are none left, and start another one whenever it dies.
+     */
+    private void runLink() {
+        int failedStarts = 0;
+        while (unfinished.get() > 0) {
+            Process process = null;
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                process = startWorker(server.getLocalPort());
+                try (Socket socket = server.accept();
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                             StandardCharsets.UTF_8));
+                     PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                             StandardCharsets.UTF_8), true)) {
+                    // the accepted socket doesn't get the server's timeout, and a read without one
+                    // would wait for a stuck worker forever
+                    socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                    String hello = in.readLine();
+                    if (hello == null || !hello.startsWith("HELLO "))
+                        throw new IOException("worker didn't say hello: " + hello);
+                    failedStarts = 0;
+                    socket.setSoTimeout(turnTimeoutMillis);
+                    serve(in, out, Long.parseLong(hello.substring(6)));
+                    out.println("QUIT");
+                }
+                // and one that won't quit is killed in the finally
+                process.waitFor(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (IOException | RuntimeException e) {
+                // the worker died, hung up or talked nonsense, so start over with a new one
+                report.crashed();
+                if (progress != null)
+                    progress.println("worker " + (process == null ? "?" : process.pid()) + " lost: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (process != null && process.isAlive())
+                    process.destroyForcibly();
+            }
+            if (++failedStarts >= maxAttempts) {
+                // this worker can't even get going, so leave the games to the others, or
+                // give them all up if this was the last one
+                if (liveLinks.decrementAndGet() == 0) {
+                    for (Job job = queue.poll(); job != null; job = queue.poll()) {
+                        report.failed();
+                        unfinished.decrementAndGet();
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give a worker games until there are none left.  If it dies in the middle of one, or
+     * doesn't finish a turn in time, the game goes back on the queue and the exception is
+     * passed on.
+     */
+    private void serve(BufferedReader in, PrintWriter out, long pid) throws IOException, InterruptedException {
+        while (unfinished.get() > 0) {
+            // another worker might still die and put its game back, so keep looking until none is being played
+            Job job = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (job == null)
+                continue;
+            try {
+                String red = job.aIsRed ? engineA : engineB;
+                String black = job.aIsRed ? engineB : engineA;
+                out.println("JOB " + job.id + " " + boardSize + " " + job.openingSeed + " " + openingTurns + " "
+                        + maxTurns + " " + red + " " + black);
+                String line;
+                do {
+                    try {
+                        line = in.readLine();
+                    } catch (SocketTimeoutException e) {
+                        throw new IOException("worker stuck, no turn of game " + job.id + " in "
+                                + turnTimeoutMillis + " ms", e);
+                    }
+                } while (line != null && line.startsWith("TURN "));
+                if (line == null)
+                    throw new IOException("worker hung up");
+                String[] fields = line.split(" ");
+                if (fields.length != 7 || !fields[0].equals("RESULT") || Integer.parseInt(fields[1]) != job.id)
+                    throw new IOException("not the result of job " + job.id + ": " + line);
+                SelfPlayGame.Result result = new SelfPlayGame.Result(Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), fields[4], Long.parseLong(fields[5]), Long.parseLong(fields[6]));
+                report.add(result, job.aIsRed, pid);
+                unfinished.decrementAndGet();
+                if (progress != null)
+                    progress.println(describe(job, result, pid));
+            } catch (IOException | RuntimeException e) {
+                if (++job.attempts < maxAttempts) {
+                    report.retried();
+                    queue.add(job);
+                } else {
+                    report.failed();
+                    unfinished.decrementAndGet();
+                    if (progress != null)
+                        progress.println("game " + job.id + " given up after " + job.attempts + " tries");
+                }
+                throw e;
+            }
+        }
+    }
+
+    private String describe(Job job, SelfPlayGame.Result result, long pid) {
+        String red = job.aIsRed ? "A" : "B";
+        String black = job.aIsRed ? "B" : "A";
+        String outcome = result.winner == CheckersData.EMPTY ? "draw"
+                : result.winner == CheckersData.RED ? red + " (red) won" : black + " (black) won";
+        return String.format("game %d on worker %d: %s in %d turns by %s, %.1f s", job.id, pid, outcome,
+                result.turns, result.reason, result.millis / 1000.0);
+    }
+
+    /**
+     * Start a worker JVM that connects back to the given port, with the same java, class
+     * path and options as this JVM, e.g. -Xmx, -Dcheckers.memory or --add-modules.
+     */
+    private static Process startWorker(int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib:jdwp")) // a debugger port can only be taken once
+                command.add(option);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SelfPlayWorker.class.getName());
+        command.add(Integer.toString(port));
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT) // so a worker's stack trace is seen
+                .start();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int openings = 50;
+        int openingTurns = 4;
+        int maxTurns = 300;
+        int boardSize = CheckersData.DEFAULT_SIZE;
+        long seed = 1;
+        int turnTimeoutMillis = DEFAULT_TURN_TIMEOUT_MILLIS;
+        List<String> engines = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--openings":
+                        openings = Integer.parseInt(args[++i]);
+                        break;
+                    case "--opening-turns":
+                        openingTurns = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-turns":
+                        maxTurns = Integer.parseInt(args[++i]);
+                        break;
+                    case "--board":
+                        boardSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--turn-timeout":
+                        turnTimeoutMillis = Math.toIntExact(Long.parseLong(args[++i]) * 1000);
+                        break;
+                    default:
+                        engines.add(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            engines.clear(); // so the usage is printed
+        }
+        if (engines.size() != 2) {
+            System.err.println("usage: SelfPlayCoordinator [--workers n] [--openings n] [--opening-turns n] "
+                    + "[--max-turns n] [--board n] [--seed n] [--turn-timeout seconds] engineA engineB");
+            System.exit(1);
+        }
+        SelfPlayCoordinator coordinator = new SelfPlayCoordinator(workers, boardSize, openingTurns, maxTurns, 3,
+                turnTimeoutMillis);
+        SelfPlayReport report = coordinator.play(engines.get(0), engines.get(1), openings, seed, System.out);
+        System.out.println();
+        System.out.print(report);
+    }
+}
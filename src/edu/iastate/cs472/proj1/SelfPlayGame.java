@@ -0,0 +1,109 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * @author cswoods
+ *
+ * One game between two engines with nobody watching, by the same rules the GUI plays:
+ * a turn is a move and every jump after it (unless the move crowned a king), a player
+ * with no moves loses, and the game is a draw when a position comes up three times or
+ * when config.noProgressPlies() plies go by without a capture or a man moving.  Games
+ * that go on past maxTurns are called a draw too, so a worker can't get stuck in one.
+ *
+ * The game starts with some random turns, chosen from a seed, so that two games between
+ * the same engines don't all go the same way.  The same seed always gives the same
+ * opening, so it can be played again with the colors swapped, in another JVM.
+ */
+final class SelfPlayGame {
+
+    // why a game ended
+    static final String NO_MOVES = "no-moves";
+    static final String REPETITION = "repetition";
+    static final String NO_PROGRESS = "no-progress";
+    static final String TURN_LIMIT = "turn-limit";
+
+    /**
+     * How a game went.
+     */
+    static final class Result {
+        final int winner; // RED or BLACK, or EMPTY for a draw
+        final int turns;  // turns played, counting the opening
+        final String reason;
+        final long nodes; // nodes both engines searched, see SearchStats
+        final long millis;
+
+        Result(int winner, int turns, String reason, long nodes, long millis) {
+            this.winner = winner;
+            this.turns = turns;
+            this.reason = reason;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+    }
+
+    private SelfPlayGame() {
+    }
+
+    /**
+     * Play a game.
+     *
+     * @param red          the engine playing RED, who moves first
+     * @param black        the engine playing BLACK.  This can be the same engine as red
+     * @param boardSize    the size of the board
+     * @param openingSeed  the seed the random opening turns are chosen with
+     * @param openingTurns how many random turns to start with
+     * @param maxTurns     how many turns the game can go before it is called a draw
+     * @param turnPlayed   told how many turns have been played after each one, or null
+     */
+    static Result play(CheckersEngine red, CheckersEngine black, int boardSize, long openingSeed,
+                       int openingTurns, int maxTurns, IntConsumer turnPlayed) {
+        long start = System.nanoTime();
+        CheckersData board = new CheckersData(boardSize);
+        board.setUpGame();
+        GameHistory history = new GameHistory();
+        history.push(board.hash(CheckersData.RED), true);
+        SplittableRandom random = new SplittableRandom(openingSeed);
+        SearchStats stats = new SearchStats();
+        int noProgressPlies = red.getConfig().noProgressPlies();
+
+        int player = CheckersData.RED;
+        for (int turn = 0; turn < maxTurns; turn++) {
+            CheckersMove[] legalMoves = board.getLegalMoves(player);
+            int other = player == CheckersData.RED ? CheckersData.BLACK : CheckersData.RED;
+            if (legalMoves == null)
+                return new Result(other, turn, NO_MOVES, stats.nodes, millisSince(start));
+
+            CheckersEngine engine = player == CheckersData.RED ? red : black;
+            boolean opening = turn < openingTurns;
+            CheckersMove move = opening ? legalMoves[random.nextInt(legalMoves.length)]
+                    : engine.chooseMove(board, player, history, legalMoves, stats, null);
+            boolean progress = board.isProgressMove(move);
+            boolean crowned = board.makeMove(move);
+            // keep jumping with the same piece for as long as it can
+            while (!crowned && move.isJump()) {
+                CheckersMove[] jumps = board.getLegalJumpsFrom(player, move.toRow, move.toCol);
+                if (jumps == null)
+                    break;
+                move = opening ? jumps[random.nextInt(jumps.length)]
+                        : engine.chooseMove(board, player, null, jumps, stats, null);
+                crowned = board.makeMove(move);
+            }
+            history.push(board.hash(other), progress);
+            player = other;
+            if (turnPlayed != null)
+                turnPlayed.accept(turn + 1);
+
+            if (history.repetitions() >= 3)
+                return new Result(CheckersData.EMPTY, turn + 1, REPETITION, stats.nodes, millisSince(start));
+            if (history.quietPlies() >= noProgressPlies)
+                return new Result(CheckersData.EMPTY, turn + 1, NO_PROGRESS, stats.nodes, millisSince(start));
+        }
+        return new Result(CheckersData.EMPTY, maxTurns, TURN_LIMIT, stats.nodes, millisSince(start));
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
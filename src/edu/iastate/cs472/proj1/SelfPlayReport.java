@@ -0,0 +1,140 @@
+package edu.iastate.cs472.proj1;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author cswoods
+ *
+ * The results of a SelfPlayCoordinator match between two engines, added up as the games
+ * come in from the workers.  It can be read (toString) at any point while the match is
+ * still going, from any thread.
+ */
+public final class SelfPlayReport {
+
+    private final String engineA, engineB;
+    private final long start = System.nanoTime();
+    private final int workers;
+
+    private int games;
+    private int winsA, winsB, draws;
+    private int redWins, blackWins;
+    private long turns;
+    private long nodes;
+    private long gameMillis; // time spent in games, added up over all the workers
+    private final Map<String, Integer> reasons = new TreeMap<>();
+    private final Map<Long, Integer> gamesByWorker = new TreeMap<>(); // by the pid of the worker
+    private int crashes;  // workers that died or hung up
+    private int retries;  // games given to another worker after theirs died
+    private int failures; // games given up on
+
+    SelfPlayReport(String engineA, String engineB, int workers) {
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.workers = workers;
+    }
+
+    /**
+     * Count a finished game.
+     *
+     * @param aIsRed true if engine A played RED
+     * @param worker the pid of the worker that played it
+     */
+    synchronized void add(SelfPlayGame.Result result, boolean aIsRed, long worker) {
+        games++;
+        if (result.winner == CheckersData.EMPTY) {
+            draws++;
+        } else {
+            if (result.winner == CheckersData.RED)
+                redWins++;
+            else
+                blackWins++;
+            if ((result.winner == CheckersData.RED) == aIsRed)
+                winsA++;
+            else
+                winsB++;
+        }
+        turns += result.turns;
+        nodes += result.nodes;
+        gameMillis += result.millis;
+        reasons.merge(result.reason, 1, Integer::sum);
+        gamesByWorker.merge(worker, 1, Integer::sum);
+    }
+
+    synchronized void crashed() {
+        crashes++;
+    }
+
+    synchronized void retried() {
+        retries++;
+    }
+
+    synchronized void failed() {
+        failures++;
+    }
+
+    public synchronized int games() {
+        return games;
+    }
+
+    public synchronized int winsA() {
+        return winsA;
+    }
+
+    public synchronized int winsB() {
+        return winsB;
+    }
+
+    public synchronized int draws() {
+        return draws;
+    }
+
+    /**
+     * @return how many games couldn't be played, even after trying them on other workers
+     */
+    public synchronized int failures() {
+        return failures;
+    }
+
+    /**
+     * @return engine A's score, 1 for a win and 1/2 for a draw, over the games so far, from 0 to 1
+     */
+    public synchronized double scoreA() {
+        return games == 0 ? 0.5 : (winsA + draws / 2.0) / games;
+    }
+
+    /**
+     * @return how many Elo points better engine A is than engine B, going by its score, or
+     *         infinity if one of them won every game
+     */
+    public synchronized double eloA() {
+        double score = scoreA();
+        if (score <= 0)
+            return Double.NEGATIVE_INFINITY;
+        if (score >= 1)
+            return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s vs %s: +%d -%d =%d (%.1f%%, elo %+.0f)%n",
+                engineA, engineB, winsA, winsB, draws, 100 * scoreA(), eloA()));
+        sb.append(String.format("red won %d, black won %d, drawn %d%n", redWins, blackWins, draws));
+        sb.append("ended by:");
+        reasons.forEach((reason, count) -> sb.append(' ').append(reason).append(' ').append(count));
+        sb.append(System.lineSeparator());
+        if (games > 0) {
+            sb.append(String.format("%d games, %.1f turns and %d nodes a game, %.2f s of play a game%n",
+                    games, (double) turns / games, nodes / games, gameMillis / 1000.0 / games));
+        }
+        sb.append(String.format("%.1f s on %d workers, %.1f games a minute%n", seconds, workers, games / seconds * 60));
+        sb.append("games by worker:");
+        gamesByWorker.forEach((pid, count) -> sb.append(' ').append(pid).append('=').append(count));
+        sb.append(System.lineSeparator());
+        sb.append(String.format("worker crashes %d, games retried %d, games failed %d%n", crashes, retries, failures));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author cswoods
+ *
+ * A JVM that plays self-play games for a SelfPlayCoordinator.  It connects back to the
+ * coordinator on the loopback port it was started with, then plays whatever games it is
+ * sent, one at a time, and says when it finishes each turn and how each game went, until
+ * it is told to quit.  See SelfPlayCoordinator for the messages.
+ *
+ * Engines are kept from one game to the next, one per engine spec, so their tables don't
+ * have to be made again for every game.  If anything goes wrong the worker just dies, and
+ * the coordinator gives its game to another worker.
+ *
+ * Usage: java edu.iastate.cs472.proj1.SelfPlayWorker port
+ */
+final class SelfPlayWorker {
+
+    private final Map<String, CheckersEngine> engines = new HashMap<>();
+
+    private SelfPlayWorker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: SelfPlayWorker port");
+            System.exit(1);
+        }
+        new SelfPlayWorker().run(Integer.parseInt(args[0]));
+    }
+
+    private void run(int port) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("HELLO " + ProcessHandle.current().pid());
+            for (String line = in.readLine(); line != null && !line.equals("QUIT"); line = in.readLine()) {
+                // JOB id boardSize openingSeed openingTurns maxTurns red black
+                String[] fields = line.split(" ");
+                if (fields.length != 8 || !fields[0].equals("JOB"))
+                    throw new IOException("not a job: " + line);
+                int boardSize = Integer.parseInt(fields[2]);
+                String id = fields[1];
+                // so the coordinator can tell a long game from a worker that is stuck
+                SelfPlayGame.Result result = SelfPlayGame.play(engine(fields[6], boardSize), engine(fields[7], boardSize),
+                        boardSize, Long.parseLong(fields[3]), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+                        turns -> out.println("TURN " + id + " " + turns));
+                out.println("RESULT " + fields[1] + " " + result.winner + " " + result.turns + " " + result.reason
+                        + " " + result.nodes + " " + result.millis);
+            }
+        }
+    }
+
+    private CheckersEngine engine(String spec, int boardSize) {
+        return engines.computeIfAbsent(spec + "@" + boardSize, key -> {
+            SearchConfig config = config(spec, boardSize);
+            return spec.startsWith("mcts") ? new MonteCarloSearch(config) : new AlphaBetaSearch(config);
+        });
+    }
+
+    /**
+     * Read an engine spec: alphabeta or mcts, then optionally a colon and settings separated
+     * by commas, like alphabeta:depth=6 or mcts:playouts=2000,threads=2.  The settings are
+     * depth, playouts, threads, exploration and network (a network file), and anything left
+     * out is the same as in SearchConfig.DEFAULT.  A spec has no spaces in it.
+     *
+     * @return the config the engine is made with
+     * @throws IllegalArgumentException if the spec doesn't make sense
+     */
+    static SearchConfig config(String spec, int boardSize) {
+        String[] parts = spec.split(":", 2);
+        if (!parts[0].equals("alphabeta") && !parts[0].equals("mcts"))
+            throw new IllegalArgumentException("engine must be alphabeta or mcts, was " + parts[0]);
+        SearchConfig.Builder config = new SearchConfig.Builder().boardSize(boardSize);
+        if (parts.length == 1 || parts[1].isEmpty())
+            return config.build();
+        for (String setting : parts[1].split(",")) {
+            String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2)
+                throw new IllegalArgumentException("engine settings look like key=value, was " + setting);
+            String value = keyValue[1];
+            switch (keyValue[0]) {
+                case "depth":
+                    config.maxDepth(Integer.parseInt(value));
+                    break;
+                case "playouts":
+                    config.playouts(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    config.threads(Integer.parseInt(value));
+                    break;
+                case "exploration":
+                    config.exploration(Double.parseDouble(value));
+                    break;
+                case "network":
+                    config.networkFile(Paths.get(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("no engine setting called " + keyValue[0]);
+            }
+        }
+        return config.build();
+    }
+}
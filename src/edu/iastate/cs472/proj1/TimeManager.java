@@ -0,0 +1,76 @@
+package edu.iastate.cs472.proj1;
+
+/**
+ * @author cswoods
+ *
+ * Splits the time on a GameClock between the moves of a game.
+ *
+ * Each move gets an even share of the time left over the moves the game probably still
+ * has, plus most of the increment, since that comes back right after the move.  Checkers
+ * games are mostly decided in the middle game, so early moves assume more moves to come
+ * and get a little less than later ones, but never fewer than MIN_MOVES_TO_GO so that a
+ * long endgame can't run the clock out.
+ *
+ * The hard limit lets a move take a few times its share when the search needs it, but
+ * never more than a fraction of what is left, and a safety margin is kept for the time it
+ * takes to get the move onto the board and the clock stopped.  So the AI never loses on
+ * time, as long as each player gets at least the margin per move.
+ */
+public final class TimeManager {
+
+    // how many more moves a game is assumed to have at the start
+    private static final int EXPECTED_MOVES = 45;
+    // the fewest moves the time left is ever split over
+    private static final int MIN_MOVES_TO_GO = 15;
+    // how many times its share the hard limit lets a move take
+    private static final int HARD_FACTOR = 4;
+    // the most of the time left the hard limit lets one move take
+    private static final double MAX_FRACTION = 0.25;
+
+    private final long overheadMillis;
+
+    /**
+     * A time manager that keeps 50 ms per move as a safety margin.
+     */
+    public TimeManager() {
+        this(50);
+    }
+
+    /**
+     * @param overheadMillis how much time to keep in reserve on every move for the time
+     *                       that isn't spent searching
+     */
+    public TimeManager(long overheadMillis) {
+        if (overheadMillis < 0)
+            throw new IllegalArgumentException("overheadMillis can't be negative, was " + overheadMillis);
+        this.overheadMillis = overheadMillis;
+    }
+
+    /**
+     * Work out how long the given player's next move may take.
+     *
+     * @param clock  the clock of the game, which doesn't have to be running
+     * @param player the player about to move
+     */
+    public SearchLimits limitsFor(GameClock clock, int player) {
+        return limitsFor(clock.remainingMillis(player), clock.incrementMillis(), clock.movesMade(player));
+    }
+
+    /**
+     * Work out how long a move may take.
+     *
+     * @param remainingMillis the time the player has left
+     * @param incrementMillis the time the player gets back after the move
+     * @param moveNumber      how many moves the player has already made
+     */
+    public SearchLimits limitsFor(long remainingMillis, long incrementMillis, int moveNumber) {
+        long usable = Math.max(0, remainingMillis - overheadMillis);
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, EXPECTED_MOVES - moveNumber / 2);
+
+        long share = usable / movesToGo + incrementMillis * 3 / 4;
+        long hard = Math.min(share * HARD_FACTOR, (long) (usable * MAX_FRACTION) + incrementMillis * 3 / 4);
+        hard = Math.min(hard, usable); // whatever happens, we must move before the flag falls
+        long soft = Math.min(share, hard);
+        return new SearchLimits(soft, hard);
+    }
+}
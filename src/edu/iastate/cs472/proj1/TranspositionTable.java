@@ -0,0 +1,375 @@
+package edu.iastate.cs472.proj1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author cswoods
+ *
+ * A transposition table: a fixed-size hash table of positions the search has already
+ * looked at, with the score it found, how deep it looked, whether the score is exact
+ * or only a bound, and the best move.  Positions that come up again through a different
+ * move order, or again in the next iteration of iterative deepening, can then be cut
+ * off right away, or at least searched with the best move first.
+ *
+ * Like EvalCache, one table is shared by every context of a SearchContextPool without
+ * locking.  Each entry is two longs, everything in it packed into one (the score only
+ * needs 16 bits, see Score), and the hash XORed with that, so an entry that was torn by
+ * two threads writing it at once just looks like a miss.
+ *
+ * The table lives as long as its pool, so it carries over from one move of a game to the
+ * next, when most of the new tree was already searched last move.  To keep it from filling
+ * up with positions that can't come up anymore, every entry remembers which search wrote
+ * it.  Positions hash to a bucket of two entries: the first keeps the deepest recent search
+ * of a position, and the second takes whatever the first won't.  Entries left over from
+ * older searches are the first to go, however deep they were.
+ *
+ * Unless SearchConfig.canonicalKeys is off, the search keys the table on
+ * CheckersData.canonicalHash, so a position and its mirror image (the board turned around,
+ * colors swapped, other player to move) share an entry.  Entries are kept from the point
+ * of view of whichever of the two is canonical, and Entry.mirror turns one around for the
+ * other.  Each entry also remembers which of the two wrote it, so the search can count the
+ * hits it only got because of that.
+ *
+ * A table on the heap can be resized between searches, to follow its share of a
+ * MemoryBudget.  The entries that still fit are moved over and the rest are dropped.
+ *
+ * The table can also be kept in a memory-mapped file instead of on the heap, so it outlives
+ * the JVM and a restarted program picks up where the last one left off, as long as it plays
+ * on the same board size with the same evaluation.  A table in a file keeps the size it was
+ * opened with.  It is mapped in one piece, so it holds at most MAX_MAPPED_ENTRIES positions,
+ * 64M of them.
+ */
+final class TranspositionTable {
+
+    // what kind of score an entry has
+    static final int EXACT = 0; // the real value of the position
+    static final int LOWER = 1; // the search failed high, so the real value is at least this
+    static final int UPPER = 2; // the search failed low, so the real value is at most this
+
+    private static final long MIRRORED = 1L << 26; // the bit of an entry's info for Entry.mirrored
+
+    private static final int SCORE_SHIFT = 48; // the score is the top 16 bits of an entry's info
+
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    private static final int LONGS_PER_BUCKET = LONGS_PER_ENTRY * ENTRIES_PER_BUCKET;
+    static final int BYTES_PER_ENTRY = LONGS_PER_ENTRY * Long.BYTES;
+    static final int MAX_ENTRIES = 1 << 29; // any more and the number of longs doesn't fit an int
+
+    // the header of a table file, which is 8 longs
+    private static final long MAGIC = 0x434B5454_41424C45L; // "CKTTABLE"
+    // change this whenever what an entry means changes: the layout, the hash keys or the scores
+    private static final long VERSION = 2;
+    private static final int HEADER_LONGS = 8;
+    private static final int HEADER_GENERATION = 4;
+    private static final int HEADER_EVALUATOR = 5;
+    // a file is mapped in one go, and one mapping can't be more than 2 GB
+    static final int MAX_MAPPED_ENTRIES = ENTRIES_PER_BUCKET
+            * Integer.highestOneBit((Integer.MAX_VALUE / Long.BYTES - HEADER_LONGS) / LONGS_PER_BUCKET);
+
+    // check, info, check, info, ...  Only resize() changes it, so read it once per probe or
+    // store, and work out the mask from that, to get a mask that fits it
+    private volatile LongBuffer slots;
+    private final LongBuffer header; // the header of the file, or null if there's no file
+    private final MappedByteBuffer mapped; // the whole file, or null
+    private volatile int generation; // which search is running, from 0 to 255 and around again
+
+    /**
+     * What a probe found.  The search keeps one of these per context and reuses it.
+     */
+    static final class Entry {
+        int score; // see Score
+        int depth; // how many plies were searched below the position
+        int bound; // EXACT, LOWER or UPPER
+        int move;  // the best move, see encode(), or 0 if there isn't one
+        boolean mirrored; // true if it was stored by the mirror image of the canonical position
+
+        /**
+         * @return true if this score settles the position for the given window
+         */
+        boolean cuts(int alpha, int beta) {
+            return bound == EXACT
+                    || (bound == LOWER && score >= beta)
+                    || (bound == UPPER && score <= alpha);
+        }
+
+        /**
+         * Turn this entry around for the mirror image of the position it was stored for:
+         * the score is from the other side, so bounds swap, and the move is turned around too.
+         */
+        void mirror(int boardSize) {
+            score = -score;
+            if (bound != EXACT)
+                bound = bound == LOWER ? UPPER : LOWER;
+            move = TranspositionTable.mirror(move, boardSize);
+        }
+    }
+
+    /**
+     * Make a table on the heap.
+     *
+     * @param entries how many positions to hold, rounded down to a power of two
+     */
+    TranspositionTable(int entries) {
+        int buckets = buckets(entries);
+        slots = LongBuffer.allocate(buckets * LONGS_PER_BUCKET);
+        header = null;
+        mapped = null;
+    }
+
+    /**
+     * Make a table in a memory-mapped file.  If the file already holds a table of the same
+     * size for the same board size and evaluation, it is picked up as it is.  Otherwise it
+     * is (re)made empty.
+     *
+     * @param entries   how many positions to hold, rounded down to a power of two, and to
+     *                  MAX_MAPPED_ENTRIES if it's more than that
+     * @param file      the file to keep the table in
+     * @param boardSize the size of the board, since the same hash means different positions
+     *                  on different boards
+     * @param evaluator which evaluation the scores come from: 0 for the handcrafted one, or
+     *                  NnueNetwork.identity.  Scores from different evaluations aren't on the
+     *                  same scale, so their bounds would cut off the wrong moves
+     */
+    TranspositionTable(int entries, Path file, int boardSize, long evaluator) throws IOException {
+        int buckets = buckets(Math.min(entries, MAX_MAPPED_ENTRIES));
+        long bytes = (HEADER_LONGS + (long) buckets * LONGS_PER_BUCKET) * Long.BYTES;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean rightSize = channel.size() == bytes;
+            if (!rightSize)
+                channel.truncate(0); // mapping it grows it back, filled with zeros
+            // the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            mapped.order(ByteOrder.nativeOrder());
+            header = mapped.asLongBuffer();
+            boolean reuse = rightSize && header.get(0) == MAGIC && header.get(1) == VERSION
+                    && header.get(2) == boardSize && header.get(3) == buckets * ENTRIES_PER_BUCKET
+                    && header.get(HEADER_EVALUATOR) == evaluator;
+
+            ByteBuffer body = mapped.duplicate();
+            body.position(HEADER_LONGS * Long.BYTES);
+            slots = body.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+            if (!reuse) {
+                // a file of the right size with the wrong header has to be cleared by hand
+                if (rightSize) {
+                    for (int i = 0; i < slots.capacity(); i++) {
+                        slots.put(i, 0);
+                    }
+                }
+                header.put(0, MAGIC);
+                header.put(1, VERSION);
+                header.put(2, boardSize);
+                header.put(3, buckets * ENTRIES_PER_BUCKET);
+                header.put(HEADER_GENERATION, 0);
+                header.put(HEADER_EVALUATOR, evaluator);
+            }
+            generation = (int) header.get(HEADER_GENERATION);
+        }
+    }
+
+    private static int buckets(int entries) {
+        return Math.max(1, Integer.highestOneBit(Math.min(Math.max(entries, 1), MAX_ENTRIES)) / ENTRIES_PER_BUCKET);
+    }
+
+    /**
+     * @return how many positions a table made for the given number of entries holds
+     */
+    static int sizeFor(int entries) {
+        return buckets(entries) * ENTRIES_PER_BUCKET;
+    }
+
+    private static int mask(LongBuffer slots) {
+        return slots.capacity() / LONGS_PER_BUCKET - 1;
+    }
+
+    /**
+     * Change how many positions a table on the heap holds.  Every entry is moved to its bucket
+     * in the new table, if there's room left in it, so growing keeps everything and shrinking
+     * keeps as much as fits.  Searches can go on using the table while this runs, but what
+     * they store in the old table in the meantime is lost.
+     *
+     * @param entries how many positions to hold, rounded down to a power of two
+     */
+    synchronized void resize(int entries) {
+        if (mapped != null)
+            throw new IllegalStateException("a table in a file can't be resized");
+        LongBuffer old = slots;
+        int buckets = buckets(entries);
+        if (buckets * LONGS_PER_BUCKET == old.capacity())
+            return;
+        LongBuffer fresh = LongBuffer.allocate(buckets * LONGS_PER_BUCKET);
+        int mask = buckets - 1;
+        for (int s = 0; s < old.capacity(); s += LONGS_PER_ENTRY) {
+            long check = old.get(s);
+            long info = old.get(s + 1);
+            if (info == 0)
+                continue;
+            // the hash isn't kept on its own, but the check is the hash XORed with the info
+            int bucket = ((int) (check ^ info) & mask) * LONGS_PER_BUCKET;
+            for (int slot = bucket; slot < bucket + LONGS_PER_BUCKET; slot += LONGS_PER_ENTRY) {
+                if (fresh.get(slot + 1) == 0) {
+                    fresh.put(slot, check);
+                    fresh.put(slot + 1, info);
+                    break;
+                }
+            }
+        }
+        slots = fresh;
+    }
+
+    /**
+     * Start a new search.  Entries written by earlier searches are still used, but they are
+     * the first to be replaced from now on.
+     */
+    void newSearch() {
+        int next = (generation + 1) & 0xFF;
+        generation = next;
+        if (header != null)
+            header.put(HEADER_GENERATION, next);
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param hash the hash of the position, with the player to move
+     * @param out  where to put what was found
+     * @return true if the position was found
+     */
+    boolean probe(long hash, Entry out) {
+        LongBuffer slots = this.slots;
+        int bucket = ((int) hash & mask(slots)) * LONGS_PER_BUCKET;
+        for (int slot = bucket; slot < bucket + LONGS_PER_BUCKET; slot += LONGS_PER_ENTRY) {
+            long check = slots.get(slot);
+            long info = slots.get(slot + 1);
+            if ((check ^ info) != hash || info == 0)
+                continue;
+            out.score = (int) (info >> SCORE_SHIFT);
+            out.move = (int) (info & 0xFFFF);
+            out.depth = (int) (info >>> 16) & 0xFF;
+            out.bound = (int) (info >>> 24) & 0x3;
+            out.mirrored = (info & MIRRORED) != 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remember what the search found for a position.  If the position is already in the
+     * table, its entry is only replaced by a search that was at least as deep, unless the
+     * entry is from an earlier search.  Otherwise it goes in the first entry of its bucket
+     * if that one is from an earlier search or no deeper than this, and in the second entry
+     * if not.
+     *
+     * @param hash  the hash of the position, with the player to move
+     * @param score the score found
+     * @param depth how many plies were searched below the position
+     * @param bound EXACT, LOWER or UPPER
+     * @param move  the best move found, see encode(), or 0
+     * @param mirrored true if the search that found this was in the mirror image of the
+     *                 position, after turning the score, bound and move around to fit it
+     */
+    void store(long hash, int score, int depth, int bound, int move, boolean mirrored) {
+        LongBuffer slots = this.slots;
+        int bucket = ((int) hash & mask(slots)) * LONGS_PER_BUCKET;
+        int generation = this.generation;
+
+        int slot = -1;
+        long oldInfo = 0;
+        for (int s = bucket; s < bucket + LONGS_PER_BUCKET; s += LONGS_PER_ENTRY) {
+            long info = slots.get(s + 1);
+            if ((slots.get(s) ^ info) == hash && info != 0) {
+                slot = s;
+                oldInfo = info;
+                break;
+            }
+        }
+
+        if (slot != -1) {
+            // the same position: keep what a deeper search of this one found
+            if (isCurrent(oldInfo, generation) && ((oldInfo >>> 16) & 0xFF) > depth)
+                return;
+        } else {
+            long firstInfo = slots.get(bucket + 1);
+            boolean replaceFirst = !isCurrent(firstInfo, generation) || ((firstInfo >>> 16) & 0xFF) <= depth;
+            slot = replaceFirst ? bucket : bucket + LONGS_PER_ENTRY;
+        }
+
+        int code = move;
+        if (code == 0 && oldInfo != 0)
+            code = (int) (oldInfo & 0xFFFF); // keep the move we knew about
+        // the 1 at bit 31 makes sure a real entry never has info == 0, like an empty slot
+        long info = code | ((long) depth << 16) | ((long) bound << 24) | (mirrored ? MIRRORED : 0)
+                | (1L << 31) | ((long) generation << 32) | ((long) score << SCORE_SHIFT);
+        slots.put(slot, hash ^ info);
+        slots.put(slot + 1, info);
+    }
+
+    /**
+     * @return true if the entry with the given info was written by the current search
+     */
+    private static boolean isCurrent(long info, int generation) {
+        return info != 0 && (int) (info >>> 32 & 0xFF) == generation;
+    }
+
+    /**
+     * Forget every position, as if the table was new.
+     */
+    synchronized void clear() {
+        LongBuffer slots = this.slots;
+        for (int i = 0; i < slots.capacity(); i++) {
+            slots.put(i, 0);
+        }
+    }
+
+    /**
+     * Write a file-backed table out to disk now, rather than whenever the OS gets to it.
+     * A table on the heap has nothing to do.
+     */
+    void flush() {
+        if (mapped != null)
+            mapped.force();
+    }
+
+    /**
+     * @return how many positions this table can hold
+     */
+    int capacity() {
+        return slots.capacity() / LONGS_PER_ENTRY;
+    }
+
+    /**
+     * @return true if this table is kept in a file, so it can't be resized
+     */
+    boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * Pack a move into 16 bits, 4 bits per coordinate, which is enough for a 10x10 board.
+     * No legal move is encoded as 0, so 0 means "no move".
+     */
+    static int encode(CheckersMove move) {
+        if (move == null)
+            return 0;
+        return move.fromRow << 12 | move.fromCol << 8 | move.toRow << 4 | move.toCol;
+    }
+
+    /**
+     * @return the encoded move with the board turned around, or 0 for no move
+     */
+    static int mirror(int move, int boardSize) {
+        if (move == 0)
+            return 0;
+        int last = boardSize - 1;
+        return (last - (move >>> 12 & 0xF)) << 12 | (last - (move >>> 8 & 0xF)) << 8
+                | (last - (move >>> 4 & 0xF)) << 4 | (last - (move & 0xF));
+    }
+}